@@ -0,0 +1,88 @@
+package com.example.smsservice.dto;
+
+import com.example.smsservice.model.TransactionStatus;
+import com.example.smsservice.repository.PhoneNumberRepository.PhoneNumberView;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row-to-DTO mapping plus JSON serialization of a response, for the transaction and phone number listings.
+ * Transaction rows are built the way the JPQL constructor expression builds them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DtoMappingBenchmark {
+
+    @Param({"20", "200"})
+    private int rows;
+
+    private ObjectMapper objectMapper;
+    private List<PhoneNumberView> phoneNumbers;
+    private LocalDateTime now;
+
+    @Setup
+    public void setUp() {
+        // what Spring Boot configures for MVC: builder defaults, ISO dates
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        now = LocalDateTime.now();
+        phoneNumbers = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            phoneNumbers.add(new View((long) i, "1555000" + (1000 + i), "Google", 0.5, "active"));
+        }
+    }
+
+    @Benchmark
+    public List<TransactionDTO> mapTransactions() {
+        List<TransactionDTO> page = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            page.add(new TransactionDTO("5077125051", 25.0, TransactionStatus.FINISHED, now.minusMinutes(i), "bob", (long) i));
+        }
+        return page;
+    }
+
+    @Benchmark
+    public byte[] serializeTransactionPage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(new TransactionPage(mapTransactions(), "MjAyNC0wNS0wMVQxMjowMHwxMjM"));
+    }
+
+    @Benchmark
+    public List<PhoneNumberDTO> mapPhoneNumbers() {
+        return phoneNumbers.stream()
+                .map(phone -> new PhoneNumberDTO(phone.getId(), phone.getPhoneNumber(), phone.getServiceName(),
+                        phone.getPrice(), phone.getStatus()))
+                .toList();
+    }
+
+    @Benchmark
+    public byte[] serializePhoneNumbers() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(mapPhoneNumbers());
+    }
+
+    private record View(Long getId, String getPhoneNumber, String getServiceName, Double getPrice, String getStatus)
+            implements PhoneNumberView {
+    }
+}
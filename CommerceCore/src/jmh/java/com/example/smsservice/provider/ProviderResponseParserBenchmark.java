@@ -0,0 +1,78 @@
+package com.example.smsservice.provider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of provider responses, with bodies shaped like the ones the provider sends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProviderResponseParserBenchmark {
+
+    private static final int SMS_COUNT = 10;
+
+    private byte[] rentResponse;
+    private byte[] smsResponse;
+    private byte[] noSmsResponse;
+    private byte[] ackResponse;
+
+    @Setup
+    public void setUp() {
+        rentResponse = bytes("{\"status\":\"ok\",\"message\":[{\"id\":\"8c3e1f52\",\"mdn\":\"15550000001\","
+                + "\"service\":\"Google\",\"price\":0.5,\"till_expiration\":900,\"carrier\":{\"name\":\"x\"}}]}");
+        StringBuilder sms = new StringBuilder("{\"status\":\"ok\",\"message\":[");
+        for (int i = 0; i < SMS_COUNT; i++) {
+            sms.append(i == 0 ? "" : ",")
+                    .append("{\"date_time\":\"2024-05-01 12:00:0").append(i)
+                    .append("\",\"from\":\"Google\",\"to\":\"15550000001\",\"reply\":\"G-")
+                    .append(100000 + i).append(" is your Google verification code.\",\"pin\":\"")
+                    .append(100000 + i).append("\"}");
+        }
+        smsResponse = bytes(sms.append("]}").toString());
+        noSmsResponse = bytes("{\"status\":\"error\",\"message\":\"No messages\"}");
+        ackResponse = bytes("{\"status\":\"ok\",\"message\":\"OK\"}");
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public ProviderNumber parseNumber() throws IOException {
+        return ProviderResponseParser.parseNumber(new ByteArrayInputStream(rentResponse), ProviderCommand.REQUEST);
+    }
+
+    @Benchmark
+    public List<ProviderSms> parseSms() throws IOException {
+        return ProviderResponseParser.parseSms(new ByteArrayInputStream(smsResponse));
+    }
+
+    @Benchmark
+    public List<ProviderSms> parseNoSms() throws IOException {
+        return ProviderResponseParser.parseSms(new ByteArrayInputStream(noSmsResponse));
+    }
+
+    @Benchmark
+    public void parseAck() throws IOException {
+        ProviderResponseParser.parseAck(new ByteArrayInputStream(ackResponse), ProviderCommand.REJECT);
+    }
+}
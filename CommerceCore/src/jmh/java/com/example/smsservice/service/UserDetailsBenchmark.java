@@ -0,0 +1,63 @@
+package com.example.smsservice.service;
+
+import com.example.smsservice.model.Role;
+import com.example.smsservice.model.User;
+import com.example.smsservice.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the authenticated principal: from a cached user row (database mode) and straight from the
+ * token claims (stateless mode, as in {@code JwtAuthenticationFilter}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserDetailsBenchmark {
+
+    private CustomUserDetailsService userDetailsService;
+
+    @Setup
+    public void setUp() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("bob");
+        user.setPassword("{bcrypt}not-checked-here");
+        user.setEmail("bob@example.com");
+        user.setRole(Role.USER);
+
+        UserCache userCache = new UserCache(10_000, 3_600, new SimpleMeterRegistry());
+        userCache.get("bob", username -> user);
+        // the repository is only consulted on a cache miss, which the benchmark never has
+        userDetailsService = new CustomUserDetailsService(Mockito.mock(UserRepository.class), userCache);
+    }
+
+    @Benchmark
+    public UserDetails loadCachedUser() {
+        return userDetailsService.loadUserByUsername("bob");
+    }
+
+    @Benchmark
+    public UserDetails fromClaims() {
+        return org.springframework.security.core.userdetails.User.withUsername("bob")
+                .password("")
+                .roles("USER")
+                .build();
+    }
+}
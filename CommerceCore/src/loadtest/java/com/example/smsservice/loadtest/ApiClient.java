@@ -0,0 +1,95 @@
+package com.example.smsservice.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * JSON calls against the application under test. Every call is timed and recorded under its endpoint name
+ * (method and path without the query); 2xx and 304 count as success.
+ */
+final class ApiClient {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    private final HttpClient httpClient;
+    private final String baseUrl;
+    private final Stats stats;
+
+    ApiClient(HttpClient httpClient, String baseUrl, Stats stats) {
+        this.httpClient = httpClient;
+        this.baseUrl = baseUrl;
+        this.stats = stats;
+    }
+
+    Response get(String path, String token, Map<String, String> headers) throws InterruptedException {
+        HttpRequest.Builder request = request(path, token).GET();
+        headers.forEach(request::header);
+        return send("GET", path, request.build());
+    }
+
+    Response post(String path, String token, Object body) throws InterruptedException {
+        String json;
+        try {
+            json = OBJECT_MAPPER.writeValueAsString(body);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+        HttpRequest request = request(path, token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        return send("POST", path, request);
+    }
+
+    private HttpRequest.Builder request(String path, String token) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(REQUEST_TIMEOUT);
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return request;
+    }
+
+    private Response send(String method, String path, HttpRequest request) throws InterruptedException {
+        int query = path.indexOf('?');
+        String endpoint = method + " " + (query < 0 ? path : path.substring(0, query));
+        long started = System.nanoTime();
+        try {
+            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            int status = response.statusCode();
+            stats.record(endpoint, System.nanoTime() - started, status / 100 == 2 || status == 304);
+            return new Response(status, parse(response.body()), response.headers().firstValue("ETag").orElse(null));
+        } catch (IOException e) {
+            stats.record(endpoint, System.nanoTime() - started, false);
+            return new Response(0, MissingNode.getInstance(), null);
+        }
+    }
+
+    private static JsonNode parse(byte[] body) {
+        if (body.length == 0) {
+            return MissingNode.getInstance();
+        }
+        try {
+            return OBJECT_MAPPER.readTree(body);
+        } catch (IOException e) {
+            // plain text bodies, e.g. "Callback accepted"
+            return MissingNode.getInstance();
+        }
+    }
+
+    record Response(int status, JsonNode body, String etag) {
+
+        boolean ok() {
+            return status / 100 == 2;
+        }
+    }
+}
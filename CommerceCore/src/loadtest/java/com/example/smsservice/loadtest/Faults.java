@@ -0,0 +1,22 @@
+package com.example.smsservice.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency and error injection of a stub: every request waits {@code latencyMs} plus up to {@code jitterMs},
+ * then fails with probability {@code errorRate}.
+ */
+record Faults(long latencyMs, long jitterMs, double errorRate) {
+
+    /**
+     * Sleeps for the injected latency and returns {@code true} if this request should fail.
+     */
+    boolean apply() throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latencyMs + (jitterMs > 0 ? random.nextLong(jitterMs + 1) : 0);
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+        return random.nextDouble() < errorRate;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.smsservice.loadtest;
+
+import com.example.smsservice.MainApp;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test: boots the application on an in-memory H2 database with the SMS provider and
+ * NOWPayments replaced by local stubs, drives a mix of user scenarios (login, catalog, purchase with SMS
+ * polling and return, deposit with IPN callback, history) from a fixed number of virtual users, and prints
+ * throughput and latency percentiles per endpoint.
+ * <p>
+ * {@code --loadtest.*} arguments configure the load and the stubs (see {@link LoadTestOptions}); any other
+ * argument is passed to the application, e.g. {@code --spring.datasource.hikari.maximum-pool-size=10}.
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        Stats stats = new Stats();
+
+        try (ProviderStub provider = new ProviderStub(options.providerFaults(), options.smsDelay());
+             NowPaymentsStub payments = new NowPaymentsStub(options.paymentFaults(), options.ipnDelay(), stats)) {
+            // system properties rank above application.properties and below command-line arguments
+            applicationProperties(provider, payments).forEach(System::setProperty);
+            ConfigurableApplicationContext application = SpringApplication.run(MainApp.class, args);
+            try {
+                String baseUrl = "http://127.0.0.1:" + application.getEnvironment().getProperty("local.server.port");
+                payments.sendCallbacksTo(URI.create(baseUrl + "/api/payments/callback"));
+                run(options, stats, baseUrl);
+            } finally {
+                application.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    private static Map<String, String> applicationProperties(ProviderStub provider, NowPaymentsStub payments) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("management.server.port", "0");
+        properties.put("spring.datasource.url", "jdbc:h2:mem:loadtest;MODE=MySQL;NON_KEYWORDS=VALUE;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE");
+        properties.put("spring.datasource.driver-class-name", "org.h2.Driver");
+        properties.put("spring.datasource.username", "sa");
+        properties.put("spring.datasource.password", "");
+        properties.put("spring.jpa.database-platform", "org.hibernate.dialect.H2Dialect");
+        properties.put("spring.devtools.restart.enabled", "false");
+        properties.put("jwt.secret", "load-test-secret-load-test-secret-load-test-secret");
+        properties.put("external.api.url", provider.apiUrl());
+        properties.put("external.api.user", "loadtest");
+        properties.put("external.api.key", "loadtest");
+        properties.put("external.api.short-term-services-url", provider.catalogUrl("short-term"));
+        properties.put("external.api.long-term-services-url", provider.catalogUrl("long-term"));
+        properties.put("nowpayments.api.url", payments.baseUrl() + "/v1");
+        properties.put("nowpayments.api.key", "loadtest");
+        properties.put("nowpayments.ipn.secret", "loadtest");
+        // per-request logging would measure the console rather than the application
+        properties.put("logging.level.root", "WARN");
+        return properties;
+    }
+
+    private static void run(LoadTestOptions options, Stats stats, String baseUrl) throws InterruptedException {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        ApiClient api = new ApiClient(httpClient, baseUrl, stats);
+
+        long warmupEnd = System.nanoTime() + options.warmup().toNanos();
+        long deadline = warmupEnd + options.duration().toNanos();
+        List<String> usernames = VirtualUser.usernames(options.users());
+        ExecutorService users = Executors.newFixedThreadPool(options.users());
+        for (String username : usernames) {
+            users.execute(new VirtualUser(api, options, stats, username, deadline));
+        }
+        System.out.printf("%d virtual users, %d s warm-up, %d s measured%n",
+                options.users(), options.warmup().toSeconds(), options.duration().toSeconds());
+
+        TimeUnit.NANOSECONDS.sleep(warmupEnd - System.nanoTime());
+        stats.reset();
+        long measureStart = System.nanoTime();
+
+        users.shutdown();
+        if (!users.awaitTermination(options.duration().toSeconds() + options.smsWait().toSeconds() + 60, TimeUnit.SECONDS)) {
+            users.shutdownNow();
+        }
+        System.out.println();
+        System.out.print(stats.report(System.nanoTime() - measureStart));
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.smsservice.loadtest;
+
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Load test settings, given as {@code --loadtest.*} arguments. Defaults describe a moderate closed-loop load
+ * with provider and NOWPayments latencies in the range seen in production.
+ */
+record LoadTestOptions(int users, Duration warmup, Duration duration, Duration thinkTime,
+                       Faults providerFaults, Duration smsDelay, Duration smsPollInterval, Duration smsWait,
+                       Faults paymentFaults, Duration ipnDelay, Map<Scenario, Integer> mix) {
+
+    static LoadTestOptions parse(String[] args) {
+        SimpleCommandLinePropertySource source = new SimpleCommandLinePropertySource(args);
+        return new LoadTestOptions(
+                (int) number(source, "users", 20),
+                Duration.ofSeconds(number(source, "warmup-seconds", 10)),
+                Duration.ofSeconds(number(source, "duration-seconds", 60)),
+                Duration.ofMillis(number(source, "think-time-ms", 200)),
+                new Faults(number(source, "provider.latency-ms", 150), number(source, "provider.jitter-ms", 100),
+                        rate(source, "provider.error-rate", 0.01)),
+                Duration.ofMillis(number(source, "provider.sms-delay-ms", 3000)),
+                Duration.ofMillis(number(source, "sms-poll-interval-ms", 1000)),
+                Duration.ofMillis(number(source, "sms-wait-ms", 30000)),
+                new Faults(number(source, "payments.latency-ms", 300), number(source, "payments.jitter-ms", 200),
+                        rate(source, "payments.error-rate", 0.01)),
+                Duration.ofMillis(number(source, "payments.ipn-delay-ms", 2000)),
+                mix(source.getProperty("loadtest.mix")));
+    }
+
+    private static long number(SimpleCommandLinePropertySource source, String name, long defaultValue) {
+        String value = source.getProperty("loadtest." + name);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    private static double rate(SimpleCommandLinePropertySource source, String name, double defaultValue) {
+        String value = source.getProperty("loadtest." + name);
+        return value == null ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    // e.g. "purchase=40,catalog=30,deposit=10,login=10,history=10"
+    private static Map<Scenario, Integer> mix(String value) {
+        Map<Scenario, Integer> mix = new EnumMap<>(Scenario.class);
+        if (value == null || value.isBlank()) {
+            mix.put(Scenario.PURCHASE, 40);
+            mix.put(Scenario.CATALOG, 30);
+            mix.put(Scenario.DEPOSIT, 10);
+            mix.put(Scenario.LOGIN, 10);
+            mix.put(Scenario.HISTORY, 10);
+            return mix;
+        }
+        for (String part : value.split(",")) {
+            String[] weight = part.split("=");
+            mix.put(Scenario.valueOf(weight[0].trim().toUpperCase()), Integer.parseInt(weight[1].trim()));
+        }
+        return mix;
+    }
+
+    enum Scenario {
+        PURCHASE,
+        CATALOG,
+        DEPOSIT,
+        LOGIN,
+        HISTORY
+    }
+}
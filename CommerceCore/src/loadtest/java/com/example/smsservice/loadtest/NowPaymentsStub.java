@@ -0,0 +1,115 @@
+package com.example.smsservice.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for NOWPayments. Every invoice is "paid" right away: after {@code ipnDelay} the stub posts a
+ * {@code finished} IPN for the full amount to the application's callback endpoint, like NOWPayments would.
+ */
+final class NowPaymentsStub extends StubServer {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Faults faults;
+    private final Duration ipnDelay;
+    private final Stats stats;
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final ScheduledExecutorService ipnScheduler = Executors.newScheduledThreadPool(4);
+    private final AtomicLong nextPaymentId = new AtomicLong(5_000_000_000L);
+    // payment_id -> invoice request
+    private final Map<String, JsonNode> payments = new ConcurrentHashMap<>();
+
+    private volatile URI callbackUri;
+
+    NowPaymentsStub(Faults faults, Duration ipnDelay, Stats stats) throws IOException {
+        this.faults = faults;
+        this.ipnDelay = ipnDelay;
+        this.stats = stats;
+    }
+
+    void sendCallbacksTo(URI callbackUri) {
+        this.callbackUri = callbackUri;
+    }
+
+    @Override
+    void handle(HttpExchange exchange) throws IOException, InterruptedException {
+        String path = exchange.getRequestURI().getPath();
+        byte[] body = readBody(exchange);
+        if (faults.apply()) {
+            respond(exchange, 500, "{\"statusCode\":500,\"message\":\"Internal server error\"}");
+            return;
+        }
+        if ("POST".equals(exchange.getRequestMethod()) && path.endsWith("/invoice")) {
+            JsonNode invoice = OBJECT_MAPPER.readTree(body);
+            String paymentId = String.valueOf(nextPaymentId.getAndIncrement());
+            payments.put(paymentId, invoice);
+            ipnScheduler.schedule(() -> sendIpn(paymentId, invoice), ipnDelay.toMillis(), TimeUnit.MILLISECONDS);
+            respond(exchange, 200, "{\"id\":\"" + paymentId + "\",\"order_id\":\"" + invoice.path("order_id").asText()
+                    + "\",\"invoice_url\":\"" + baseUrl() + "/invoice/" + paymentId + "\"}");
+        } else if ("GET".equals(exchange.getRequestMethod()) && path.endsWith("/payment/")) {
+            // payments of an invoice; the stub uses the same id for an invoice and its single payment
+            String query = exchange.getRequestURI().getQuery();
+            String invoiceId = query == null ? "" : query.replaceAll(".*invoiceId=([^&]*).*", "$1");
+            JsonNode invoice = payments.get(invoiceId);
+            respond(exchange, 200, "{\"data\":[" + (invoice == null ? "" : paymentJson(invoiceId, invoice)) + "]}");
+        } else if ("GET".equals(exchange.getRequestMethod()) && path.contains("/payment/")) {
+            String paymentId = path.substring(path.lastIndexOf('/') + 1);
+            JsonNode invoice = payments.get(paymentId);
+            if (invoice == null) {
+                respond(exchange, 404, "{\"statusCode\":404,\"message\":\"Payment not found\"}");
+            } else {
+                respond(exchange, 200, paymentJson(paymentId, invoice));
+            }
+        } else {
+            respond(exchange, 404, "{\"statusCode\":404,\"message\":\"Not found\"}");
+        }
+    }
+
+    private void sendIpn(String paymentId, JsonNode invoice) {
+        URI target = callbackUri;
+        if (target == null) {
+            return;
+        }
+        HttpRequest request = HttpRequest.newBuilder(target)
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(paymentJson(paymentId, invoice)))
+                .build();
+        long started = System.nanoTime();
+        try {
+            HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+            stats.record(Stats.IPN_CALLBACK, System.nanoTime() - started, response.statusCode() == 200);
+        } catch (IOException e) {
+            stats.record(Stats.IPN_CALLBACK, System.nanoTime() - started, false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String paymentJson(String paymentId, JsonNode invoice) {
+        return "{\"payment_id\":\"" + paymentId + "\",\"order_id\":\"" + invoice.path("order_id").asText()
+                + "\",\"payment_status\":\"finished\",\"price_amount\":" + invoice.path("price_amount").asDouble()
+                + ",\"actually_paid\":" + invoice.path("price_amount").asDouble() + "}";
+    }
+
+    @Override
+    public void close() {
+        ipnScheduler.shutdownNow();
+        super.close();
+    }
+}
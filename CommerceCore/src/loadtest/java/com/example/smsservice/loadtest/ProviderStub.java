@@ -0,0 +1,86 @@
+package com.example.smsservice.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the SMS provider API and its two service catalogs. Rented numbers receive one verification
+ * SMS {@code smsDelay} after the rent.
+ */
+final class ProviderStub extends StubServer {
+
+    static final String SERVICE = "Google";
+
+    private static final String CATALOG = "{\"status\":\"ok\",\"message\":[{\"name\":\"" + SERVICE + "\","
+            + "\"price\":\"0.50\",\"ltr_price\":\"10.00\"},{\"name\":\"Telegram\",\"price\":\"0.35\",\"ltr_price\":\"8.00\"}]}";
+    private static final String ACK = "{\"status\":\"ok\",\"message\":\"OK\"}";
+    private static final String NO_MESSAGES = "{\"status\":\"error\",\"message\":\"No messages\"}";
+    private static final String ERROR = "{\"status\":\"error\",\"message\":\"Temporary failure, try again\"}";
+
+    private final Faults faults;
+    private final long smsDelayNanos;
+    private final AtomicLong nextNumber = new AtomicLong(1);
+    // mdn -> time the number was rented
+    private final Map<String, Long> rented = new ConcurrentHashMap<>();
+
+    ProviderStub(Faults faults, Duration smsDelay) throws IOException {
+        this.faults = faults;
+        this.smsDelayNanos = smsDelay.toNanos();
+    }
+
+    String apiUrl() {
+        return baseUrl() + "/api";
+    }
+
+    String catalogUrl(String name) {
+        return baseUrl() + "/catalog/" + name;
+    }
+
+    @Override
+    void handle(HttpExchange exchange) throws IOException, InterruptedException {
+        if (exchange.getRequestURI().getPath().startsWith("/catalog/")) {
+            respond(exchange, 200, CATALOG);
+            return;
+        }
+        Map<String, String> params = query(exchange.getRequestURI());
+        String cmd = params.getOrDefault("cmd", "");
+        if (faults.apply()) {
+            respond(exchange, 200, ERROR);
+            return;
+        }
+        switch (cmd) {
+            case "request" -> {
+                long id = nextNumber.getAndIncrement();
+                String mdn = "1555" + String.format("%07d", id);
+                rented.put(mdn, System.nanoTime());
+                respond(exchange, 200, "{\"status\":\"ok\",\"message\":[{\"id\":\"" + id + "\",\"mdn\":\"" + mdn
+                        + "\",\"service\":\"" + params.get("service") + "\",\"till_expiration\":900}]}");
+            }
+            case "ltr_rent" -> {
+                long id = nextNumber.getAndIncrement();
+                String mdn = "1666" + String.format("%07d", id);
+                rented.put(mdn, System.nanoTime());
+                respond(exchange, 200, "{\"status\":\"ok\",\"message\":{\"id\":\"" + id + "\",\"mdn\":\"" + mdn
+                        + "\",\"expires\":\"2099-01-01 00:00:00\"}}");
+            }
+            case "read_sms" -> {
+                String mdn = params.get("mdn");
+                Long rentedAt = rented.get(mdn);
+                if (rentedAt == null || System.nanoTime() - rentedAt < smsDelayNanos) {
+                    respond(exchange, 200, NO_MESSAGES);
+                } else {
+                    respond(exchange, 200, "{\"status\":\"ok\",\"message\":[{\"date_time\":\"2024-01-01 00:00:00\","
+                            + "\"from\":\"" + SERVICE + "\",\"reply\":\"G-" + mdn.substring(mdn.length() - 6)
+                            + " is your verification code.\"}]}");
+                }
+            }
+            case "reject", "ltr_release" -> respond(exchange, 200, ACK);
+            default -> respond(exchange, 200, "{\"status\":\"error\",\"message\":\"Unknown command\"}");
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.smsservice.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms (microsecond resolution) and error counts per endpoint.
+ */
+final class Stats {
+
+    static final String IPN_CALLBACK = "POST /api/payments/callback (IPN)";
+    static final String SMS_ARRIVAL = "purchase -> first SMS";
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    void record(String endpoint, long durationNanos, boolean success) {
+        Endpoint stats = endpoints.computeIfAbsent(endpoint, name -> new Endpoint());
+        stats.latency.recordValue(Math.max(1, TimeUnit.NANOSECONDS.toMicros(durationNanos)));
+        if (!success) {
+            stats.errors.increment();
+        }
+    }
+
+    /**
+     * Drops everything recorded so far, used at the end of the warm-up.
+     */
+    void reset() {
+        endpoints.clear();
+    }
+
+    String report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder report = new StringBuilder(String.format("%-44s %9s %8s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+        long total = 0;
+        for (Map.Entry<String, Endpoint> entry : new TreeMap<>(endpoints).entrySet()) {
+            Histogram latency = entry.getValue().latency.copy();
+            long count = latency.getTotalCount();
+            if (!SMS_ARRIVAL.equals(entry.getKey())) {
+                total += count;
+            }
+            report.append(String.format("%-44s %9d %8d %9.1f %9.1f %9.1f %9.1f %9.1f%n", entry.getKey(), count,
+                    entry.getValue().errors.sum(), count / seconds, millis(latency, 50), millis(latency, 99),
+                    millis(latency, 99.9), latency.getMaxValue() / 1000.0));
+        }
+        report.append(String.format("%-44s %9d %8s %9.1f%n", "total requests", total, "", total / seconds));
+        return report.toString();
+    }
+
+    private static double millis(Histogram latency, double percentile) {
+        return latency.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static final class Endpoint {
+        private final ConcurrentHistogram latency = new ConcurrentHistogram(3);
+        private final LongAdder errors = new LongAdder();
+    }
+}
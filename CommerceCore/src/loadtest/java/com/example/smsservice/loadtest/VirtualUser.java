@@ -0,0 +1,135 @@
+package com.example.smsservice.loadtest;
+
+import com.example.smsservice.loadtest.LoadTestOptions.Scenario;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * One simulated customer: registers, tops up the balance once, then runs randomly picked scenarios with a
+ * think time in between until the test ends.
+ */
+final class VirtualUser implements Runnable {
+
+    private static final String PASSWORD = "load-test-password";
+    private static final double TOP_UP = 1000;
+
+    private final ApiClient api;
+    private final LoadTestOptions options;
+    private final Stats stats;
+    private final String username;
+    private final long deadline;
+    private final Scenario[] scenarios;
+
+    private String token;
+    private String pricesEtag;
+
+    VirtualUser(ApiClient api, LoadTestOptions options, Stats stats, String username, long deadline) {
+        this.api = api;
+        this.options = options;
+        this.stats = stats;
+        this.username = username;
+        this.deadline = deadline;
+        this.scenarios = options.mix().entrySet().stream()
+                .flatMap(entry -> Collections.nCopies(entry.getValue(), entry.getKey()).stream())
+                .toArray(Scenario[]::new);
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (!register()) {
+                return;
+            }
+            topUp();
+            while (System.nanoTime() < deadline) {
+                switch (scenarios[ThreadLocalRandom.current().nextInt(scenarios.length)]) {
+                    case PURCHASE -> purchase();
+                    case CATALOG -> catalog();
+                    case DEPOSIT -> deposit(25);
+                    case LOGIN -> login();
+                    case HISTORY -> history();
+                }
+                Thread.sleep(options.thinkTime().toMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean register() throws InterruptedException {
+        api.post("/api/auth/register", null,
+                Map.of("username", username, "password", PASSWORD, "email", username + "@loadtest.local"));
+        return login();
+    }
+
+    private boolean login() throws InterruptedException {
+        ApiClient.Response response = api.post("/api/auth/login", null, Map.of("username", username, "password", PASSWORD));
+        if (response.ok()) {
+            token = response.body().path("token").asText();
+        }
+        return token != null;
+    }
+
+    // deposits and waits until the IPN has been applied, so purchases don't fail on an empty balance
+    private void topUp() throws InterruptedException {
+        deposit(TOP_UP);
+        while (System.nanoTime() < deadline) {
+            ApiClient.Response balance = api.get("/api/payments/get-balance?username=" + username, token, Map.of());
+            if (balance.body().path("balance").asDouble() > 0) {
+                return;
+            }
+            Thread.sleep(500);
+        }
+    }
+
+    private void deposit(double amount) throws InterruptedException {
+        api.post("/api/payments/create", token, Map.of("orderId", UUID.randomUUID().toString(), "amount", amount,
+                "currency", "usd", "crypto", "btc", "username", username));
+    }
+
+    private void catalog() throws InterruptedException {
+        ApiClient.Response prices = api.get("/api/prices", null,
+                pricesEtag == null ? Map.of() : Map.of("If-None-Match", pricesEtag));
+        if (prices.etag() != null) {
+            pricesEtag = prices.etag();
+        }
+        api.get("/api/proxy/services", null, Map.of());
+    }
+
+    private void purchase() throws InterruptedException {
+        long started = System.nanoTime();
+        ApiClient.Response purchased = api.post("/api/phone-numbers/purchase", token,
+                Map.of("username", username, "service", ProviderStub.SERVICE, "rentalType", "short_term"));
+        String phoneNumber = purchased.body().path("phoneNumber").asText(null);
+        if (!purchased.ok() || phoneNumber == null) {
+            return;
+        }
+
+        long waitUntil = System.nanoTime() + options.smsWait().toNanos();
+        boolean received = false;
+        while (!received && System.nanoTime() < waitUntil) {
+            Thread.sleep(options.smsPollInterval().toMillis());
+            JsonNode messages = api.post("/api/sms/messages", token, Map.of("phoneNumber", phoneNumber)).body();
+            received = messages.isArray() && !messages.isEmpty();
+        }
+        stats.record(Stats.SMS_ARRIVAL, System.nanoTime() - started, received);
+
+        api.post("/api/phone-numbers/return", token, Map.of("username", username, "phoneNumber", phoneNumber));
+    }
+
+    private void history() throws InterruptedException {
+        api.get("/api/payments/transactions?username=" + username + "&limit=20", token, Map.of());
+        api.get("/api/auth/my-phone-numbers", token, Map.of());
+    }
+
+    static List<String> usernames(int count) {
+        String run = Long.toString(System.currentTimeMillis(), 36);
+        return IntStream.range(0, count).mapToObj(i -> "load-" + run + "-" + i).toList();
+    }
+}
@@ -2,6 +2,7 @@ package com.example.smsservice.config;
 
 import com.example.smsservice.service.CustomUserDetailsService;
 import com.example.smsservice.util.JwtAuthenticationFilter;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,11 +48,15 @@ public class SecurityConfig {
                 .csrf(csrf -> csrf.disable())
                 .authorizeHttpRequests(authz -> authz
                         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
-                        .requestMatchers("/api/auth/**", "/h2-console/**", "/api/payments/callback", "/api/proxy/services", "/error").permitAll()
+                        // SSE completion re-dispatches asynchronously; the request was authorized on the initial dispatch
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                        .requestMatchers("/api/auth/**", "/h2-console/**", "/api/payments/callback", "/api/proxy/services", "/api/prices", "/error").permitAll()
+                        // the other actuator endpoints are only served on the internal management port
+                        .requestMatchers("/actuator/health", "/actuator/prometheus").permitAll()
                         .requestMatchers("/api/admin/**").hasRole("ADMIN")
                         .requestMatchers("/api/user/**").hasRole("USER")
                         .requestMatchers("/api/payments/purchase").hasAnyRole("ADMIN", "USER")
-                        .requestMatchers("/api/sms/messages").authenticated()
+                        .requestMatchers("/api/sms/messages", "/api/sms/stream", "/api/sms/stream-token").authenticated()
                         .anyRequest().authenticated()
                 )
                 .exceptionHandling(exceptionHandling -> exceptionHandling
@@ -87,8 +92,8 @@ public class SecurityConfig {
                 "/"
         ));
         configuration.setAllowedMethods(List.of("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
-        configuration.setAllowedHeaders(List.of("Authorization", "Content-Type"));
-        configuration.setExposedHeaders(List.of("Authorization"));
+        configuration.setAllowedHeaders(List.of("Authorization", "Content-Type", "Last-Event-ID"));
+        configuration.setExposedHeaders(List.of("Authorization", "X-Next-Cursor"));
         configuration.setAllowCredentials(true);
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
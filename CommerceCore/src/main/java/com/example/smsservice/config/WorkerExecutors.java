@@ -0,0 +1,86 @@
+package com.example.smsservice.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the executors of the background jobs. With {@code spring.threads.virtual.enabled=true} on a JDK
+ * that has virtual threads (the same switch that moves Tomcat, {@code @Scheduled} and {@code @Async} to
+ * virtual threads) every task gets its own virtual thread; otherwise tasks share a fixed pool of platform
+ * threads.
+ */
+@Component
+public class WorkerExecutors {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkerExecutors.class);
+
+    private final boolean virtual;
+
+    public WorkerExecutors(Environment environment) {
+        this.virtual = Threading.VIRTUAL.isActive(environment);
+        logger.info("Background jobs run on {} threads", virtual ? "virtual" : "platform");
+    }
+
+    /**
+     * At most {@code parallelism} tasks run at a time, on either kind of thread.
+     */
+    public ExecutorService bounded(String threadNamePrefix, int parallelism) {
+        return virtual ? virtualPerTask(threadNamePrefix, parallelism) : fixedPool(threadNamePrefix, parallelism);
+    }
+
+    /**
+     * For tasks that mostly wait on provider calls. On virtual threads they are not limited here, the
+     * per-command permits of {@link com.example.smsservice.provider.ProviderConcurrencyLimiter} are;
+     * {@code parallelism} only sizes the platform thread pool.
+     */
+    public ExecutorService providerBound(String threadNamePrefix, int parallelism) {
+        return virtual ? virtualPerTask(threadNamePrefix, 0) : fixedPool(threadNamePrefix, parallelism);
+    }
+
+    private static ExecutorService fixedPool(String threadNamePrefix, int parallelism) {
+        return Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory(threadNamePrefix));
+    }
+
+    // no queue and no idle threads, every task starts a virtual thread that waits for a permit if there is a limit
+    private static ExecutorService virtualPerTask(String threadNamePrefix, int maxConcurrency) {
+        Semaphore permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                new VirtualThreadTaskExecutor(threadNamePrefix).getVirtualThreadFactory()) {
+
+            @Override
+            public void execute(Runnable task) {
+                super.execute(permits == null ? task : () -> runWithPermit(permits, task));
+            }
+        };
+    }
+
+    // the permit is taken inside the task, so a task that was accepted always runs and completes the future
+    // of a CompletableFuture.runAsync/supplyAsync caller
+    private static void runWithPermit(Semaphore permits, Runnable task) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            // shutting down: run without a permit and with the interrupt flag set, so the task fails fast
+            Thread.currentThread().interrupt();
+            task.run();
+            return;
+        }
+        try {
+            task.run();
+        } finally {
+            permits.release();
+        }
+    }
+}
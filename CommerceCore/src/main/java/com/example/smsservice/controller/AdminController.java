@@ -1,24 +1,38 @@
 package com.example.smsservice.controller;
 
 import com.example.smsservice.dto.PhoneNumberDTO;
-import com.example.smsservice.dto.UserDTO;
-import com.example.smsservice.model.PhoneNumber;
+import com.example.smsservice.dto.UserSummaryDTO;
+import com.example.smsservice.model.Role;
 import com.example.smsservice.model.User;
+import com.example.smsservice.provider.MockProviderClient;
+import com.example.smsservice.provider.MockProviderProperties;
+import com.example.smsservice.provider.ProviderCommand;
+import com.example.smsservice.provider.ProviderConcurrencyLimiter;
+import com.example.smsservice.service.BalanceService;
+import com.example.smsservice.service.EmailDispatcher;
+import com.example.smsservice.service.MaintenanceService;
 import com.example.smsservice.service.MarkupService;
+import com.example.smsservice.service.NumberExpiryService;
+import com.example.smsservice.service.PaymentCallbackInbox;
+import com.example.smsservice.service.PaymentReconciler;
 import com.example.smsservice.service.PhoneNumberService;
+import com.example.smsservice.service.PricingEngine;
+import com.example.smsservice.service.UserCache;
 import com.example.smsservice.service.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/admin")
@@ -28,14 +42,42 @@ public class AdminController {
     private final UserService userService;
     private static final Logger logger = LoggerFactory.getLogger(AdminController.class);
     private final MarkupService markupService;
+    private final UserCache userCache;
+    private final BalanceService balanceService;
+    private final PaymentCallbackInbox paymentCallbackInbox;
+    private final PaymentReconciler paymentReconciler;
+    private final NumberExpiryService numberExpiryService;
+    private final MaintenanceService maintenanceService;
+    private final EmailDispatcher emailDispatcher;
+    private final PricingEngine pricingEngine;
+    private final ProviderConcurrencyLimiter providerConcurrencyLimiter;
+    private final ObjectProvider<MockProviderClient> mockProviderClient;
+
+    private static final int MAX_USERS_PAGE = 1000;
 
 
 
     @Autowired
-    public AdminController(UserService userService, PhoneNumberService phoneNumberService, MarkupService markupService) {
+    public AdminController(UserService userService, PhoneNumberService phoneNumberService, MarkupService markupService,
+                           UserCache userCache, BalanceService balanceService,
+                           PaymentCallbackInbox paymentCallbackInbox, PaymentReconciler paymentReconciler,
+                           NumberExpiryService numberExpiryService, MaintenanceService maintenanceService,
+                           EmailDispatcher emailDispatcher, PricingEngine pricingEngine,
+                           ProviderConcurrencyLimiter providerConcurrencyLimiter,
+                           ObjectProvider<MockProviderClient> mockProviderClient) {
         this.userService = userService;
         this.phoneNumberService = phoneNumberService;
         this.markupService = markupService;
+        this.userCache = userCache;
+        this.balanceService = balanceService;
+        this.paymentCallbackInbox = paymentCallbackInbox;
+        this.paymentReconciler = paymentReconciler;
+        this.numberExpiryService = numberExpiryService;
+        this.maintenanceService = maintenanceService;
+        this.emailDispatcher = emailDispatcher;
+        this.pricingEngine = pricingEngine;
+        this.providerConcurrencyLimiter = providerConcurrencyLimiter;
+        this.mockProviderClient = mockProviderClient;
     }
 
     @GetMapping("/markup")
@@ -46,14 +88,23 @@ public class AdminController {
 
     @GetMapping("/users")
     @PreAuthorize("hasRole('ADMIN')")
-    public List<User> getAllUsers() {
-        return userService.getAllUsers();
+    public ResponseEntity<List<UserSummaryDTO>> getAllUsers(@RequestParam(defaultValue = "0") long afterId,
+                                                            @RequestParam(defaultValue = "1000") int limit) {
+        if (limit < 1 || limit > MAX_USERS_PAGE) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<UserSummaryDTO> users = userService.getUserSummaries(afterId, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (users.size() == limit) {
+            response.header("X-Next-Cursor", String.valueOf(users.get(users.size() - 1).getId()));
+        }
+        return response.body(users);
     }
 
     @GetMapping("/numbers-by-owner")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<List<PhoneNumber>> getNumbersByOwner(@RequestParam String username) {
-        List<PhoneNumber> phoneNumbers = phoneNumberService.getNumbersByOwner(username);
+    public ResponseEntity<List<PhoneNumberDTO>> getNumbersByOwner(@RequestParam String username) {
+        List<PhoneNumberDTO> phoneNumbers = phoneNumberService.getNumbersByOwner(username);
         return ResponseEntity.ok(phoneNumbers);
     }
 
@@ -92,6 +143,7 @@ public class AdminController {
         }
 
         markupService.updateMarkup(markup);
+        pricingEngine.refresh();
         return ResponseEntity.ok("Markup updated successfully");
     }
 
@@ -131,30 +183,127 @@ public class AdminController {
         }
     }
 
+    @PutMapping("/update-role")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> updateRole(@RequestBody Map<String, String> payload) {
+        String username = payload.get("username");
+        String role = payload.get("role");
+
+        if (username == null || role == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Both username and role are required."));
+        }
+
+        try {
+            userService.updateUserRole(username, Role.valueOf(role.toUpperCase()));
+            return ResponseEntity.ok(Map.of("message", "Role updated successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Unknown role: " + role));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/stats/user-cache")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getUserCacheStats() {
+        return ResponseEntity.ok(userCache.stats());
+    }
+
+    @GetMapping("/stats/balance-ledger")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getBalanceLedgerStats() {
+        return ResponseEntity.ok(balanceService.lastReconciliation());
+    }
+
+    @GetMapping("/stats/payment-callbacks")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getPaymentCallbackStats() {
+        return ResponseEntity.ok(paymentCallbackInbox.stats());
+    }
+
+    @GetMapping("/stats/payment-reconciler")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getPaymentReconcilerStats() {
+        return ResponseEntity.ok(paymentReconciler.stats());
+    }
+
+    @GetMapping("/stats/number-expiry")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getNumberExpiryStats() {
+        return ResponseEntity.ok(numberExpiryService.stats());
+    }
+
+    @GetMapping("/stats/maintenance")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getMaintenanceStats() {
+        return ResponseEntity.ok(maintenanceService.lastRun());
+    }
+
+    @GetMapping("/stats/email-outbox")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getEmailOutboxStats() {
+        return ResponseEntity.ok(emailDispatcher.stats());
+    }
+
+    @GetMapping("/stats/provider-concurrency")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getProviderConcurrencyStats() {
+        return ResponseEntity.ok(providerConcurrencyLimiter.stats());
+    }
+
+    @GetMapping("/stats/mock-provider")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getMockProviderStats() {
+        MockProviderClient mock = mockProviderClient.getIfAvailable();
+        if (mock == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Provider is not mocked"));
+        }
+        return ResponseEntity.ok(mock.stats());
+    }
+
+    // without "command" the faults apply to every provider command
+    @PutMapping("/mock-provider/faults")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> setMockProviderFaults(@RequestBody Map<String, Object> payload) {
+        MockProviderClient mock = mockProviderClient.getIfAvailable();
+        if (mock == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Provider is not mocked"));
+        }
+        try {
+            ProviderCommand command = payload.get("command") == null
+                    ? null : ProviderCommand.valueOf(payload.get("command").toString().toUpperCase());
+            MockProviderProperties.Faults faults = new MockProviderProperties.Faults();
+            faults.setLatencyMs(Long.parseLong(payload.getOrDefault("latencyMs", 0).toString()));
+            faults.setJitterMs(Long.parseLong(payload.getOrDefault("jitterMs", 0).toString()));
+            faults.setErrorRate(Double.parseDouble(payload.getOrDefault("errorRate", 0).toString()));
+            faults.setTimeoutRate(Double.parseDouble(payload.getOrDefault("timeoutRate", 0).toString()));
+            if (payload.get("errorMessage") != null) {
+                faults.setErrorMessage(payload.get("errorMessage").toString());
+            }
+            mock.setFaults(command, faults);
+            return ResponseEntity.ok(Map.of("message", "Mock provider faults updated"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @GetMapping("/users-with-numbers")
     @PreAuthorize("hasRole('ADMIN')") // Только для администратора
-    public ResponseEntity<List<UserDTO>> getUsersWithNumbers() {
-        List<User> users = userService.getAllUsers();
-
-        // Преобразование в DTO
-        List<UserDTO> userDTOs = users.stream()
-                .map(user -> new UserDTO(
-                        user.getUsername(),
-                        user.getEmail(),
-                        user.getBalance(),
-                        user.getPhoneNumbers().stream()
-                                .map(phone -> new PhoneNumberDTO(
-                                        null,
-                                        phone.getPhoneNumber(),
-                                        phone.getServiceName(),
-                                        phone.getPrice(),
-                                        phone.getStatus()
-                                ))
-                                .collect(Collectors.toList())
-                ))
-                .collect(Collectors.toList());
-
-        return ResponseEntity.ok(userDTOs);
+    public ResponseEntity<StreamingResponseBody> getUsersWithNumbers(@RequestParam(required = false) String username,
+                                                                     @RequestParam(defaultValue = "0") long afterId,
+                                                                     @RequestParam(required = false) Integer limit) {
+        if (limit != null && (limit < 1 || limit > MAX_USERS_PAGE)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        if (limit != null) {
+            Long nextCursor = userService.nextUsersWithNumbersCursor(username, afterId, limit);
+            if (nextCursor != null) {
+                response.header("X-Next-Cursor", String.valueOf(nextCursor));
+            }
+        }
+        return response.body(out -> userService.writeUsersWithNumbers(username, afterId, limit, out));
     }
 
     @PutMapping("/transfer-number")
@@ -182,14 +331,14 @@ public class AdminController {
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> deleteUser(@RequestParam String username) {
         try {
-            System.out.println("Attempting to delete user: " + username);
+            logger.info("Attempting to delete user: {}", username);
             userService.deleteUserByUsername(username);
             return ResponseEntity.ok(Map.of("message", "User deleted successfully"));
         } catch (RuntimeException e) {
-            System.err.println("Error during user deletion: " + e.getMessage());
+            logger.warn("Error during user deletion: {}", e.getMessage());
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
-            System.err.println("Unexpected error during user deletion: " + e.getMessage());
+            logger.error("Unexpected error during user deletion", e);
             return ResponseEntity.status(500).body(Map.of("error", "Internal server error", "details", e.getMessage()));
         }
     }
@@ -6,18 +6,23 @@ import com.example.smsservice.dto.PhoneNumberDTO;
 import com.example.smsservice.dto.SuccessResponse;
 import com.example.smsservice.model.ErrorResponse;
 import com.example.smsservice.model.LoginRequest;
-import com.example.smsservice.model.PhoneNumber;
 import com.example.smsservice.model.User;
+import com.example.smsservice.repository.PhoneNumberRepository.PhoneNumberView;
 import com.example.smsservice.repository.UserRepository;
+import com.example.smsservice.service.CachedUser;
 import com.example.smsservice.service.EmailService;
 import com.example.smsservice.service.PhoneNumberService;
+import com.example.smsservice.service.TokenVersionRegistry;
 import com.example.smsservice.service.UserService;
 import com.example.smsservice.util.JwtUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
@@ -38,44 +43,49 @@ import java.util.stream.Collectors;
 @CrossOrigin(origins = "https://www.realsimus.online")
 public class AuthController {
 
+    private static final Logger logger = LoggerFactory.getLogger(AuthController.class);
+
     private final UserService userService;
     private final JwtUtil jwtUtil;
     private final AuthenticationManager authenticationManager;
     private final PhoneNumberService phoneNumberService;
     private final PasswordEncoder passwordEncoder;
     private final UserRepository userRepository;
+    private final TokenVersionRegistry tokenVersionRegistry;
 
     @Autowired
-    public AuthController(UserService userService, JwtUtil jwtUtil, AuthenticationManager authenticationManager, PhoneNumberService phoneNumberService, PasswordEncoder passwordEncoder, UserRepository userRepository) {
+    public AuthController(UserService userService, JwtUtil jwtUtil, AuthenticationManager authenticationManager, PhoneNumberService phoneNumberService, PasswordEncoder passwordEncoder, UserRepository userRepository,
+                          TokenVersionRegistry tokenVersionRegistry) {
         this.userService = userService;
         this.jwtUtil = jwtUtil;
         this.authenticationManager = authenticationManager;
         this.phoneNumberService = phoneNumberService;
         this.passwordEncoder = passwordEncoder;
         this.userRepository = userRepository;
+        this.tokenVersionRegistry = tokenVersionRegistry;
     }
 
     @PostMapping("/password-update")
     public ResponseEntity<?> updatePassword(@RequestBody PasswordUpdateRequest request) {
         try {
-            System.out.println("Password update request received for email: " + request.getEmail());
+            logger.info("Password update request received for email: {}", request.getEmail());
 
             if (request.getToken() == null || request.getToken().isEmpty()) {
-                System.out.println("Token is missing");
+                logger.debug("Password reset token is missing");
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", "Token is missing"));
             }
 
             boolean isTokenValid = userService.validatePasswordResetToken(request.getToken());
             if (!isTokenValid) {
-                System.out.println("Invalid or expired token");
+                logger.debug("Invalid or expired password reset token");
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", "Invalid or expired token"));
             }
 
             userService.updatePassword(request.getEmail(), request.getNewPassword());
-            System.out.println("Password updated successfully for email: " + request.getEmail());
+            logger.info("Password updated successfully for email: {}", request.getEmail());
             return ResponseEntity.ok(new SuccessResponse("Password updated successfully"));
         } catch (RuntimeException e) {
-            System.out.println("Error during password update: " + e.getMessage());
+            logger.warn("Error during password update: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(new ErrorResponse("User not found", e.getMessage()));
         }
@@ -87,26 +97,24 @@ public class AuthController {
     @PostMapping("/forgot-password")
     public ResponseEntity<?> forgotPassword(@RequestBody Map<String, String> requestBody) {
         String email = requestBody.get("email");
-        System.out.println("Received forgot-password request for email: " + email);
+        logger.info("Received forgot-password request for email: {}", email);
 
         if (email == null || email.isEmpty()) {
-            System.out.println("Email is missing in request");
+            logger.debug("Email is missing in forgot-password request");
             return ResponseEntity.badRequest().body(Map.of("message", "Email is required"));
         }
 
         try {
             String resetToken = userService.generatePasswordResetToken(email);
-            System.out.println("Generated reset token: " + resetToken);
 
             String resetLink = "https://1develop1.wixstudio.com/realsimus/reset?token=" + resetToken;
-            System.out.println("Reset link: " + resetLink);
 
-            emailService.sendResetPasswordEmail(email, resetLink);
-            System.out.println("Reset email sent successfully to: " + email);
+            emailService.enqueueResetPasswordEmail(email, resetLink);
+            logger.info("Reset email queued for: {}", email);
 
             return ResponseEntity.ok(Map.of("message", "Password reset email sent successfully"));
         } catch (RuntimeException e) {
-            System.err.println("Error during password reset process: " + e.getMessage());
+            logger.warn("Error during password reset process: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(Map.of("message", e.getMessage()));
         }
@@ -145,7 +153,11 @@ public class AuthController {
                     .map(auth -> auth.getAuthority().replace("ROLE_", ""))
                     .orElse("USER");
 
-            String token = jwtUtil.generateToken(loginRequest.getUsername(), role);
+            TokenVersionRegistry.Version version = tokenVersionRegistry.currentVersion(loginRequest.getUsername());
+            if (version == null) {
+                throw new BadCredentialsException("User no longer exists");
+            }
+            String token = jwtUtil.generateToken(loginRequest.getUsername(), role, version.userId(), version.version());
 
             return ResponseEntity.ok(Map.of(
                     "token", token,
@@ -171,13 +183,9 @@ public class AuthController {
     public ResponseEntity<List<PhoneNumberDTO>> getUserPhoneNumbers(Principal principal) {
         // Получить имя пользователя из Principal
         String username = principal.getName();
-        User user = userService.findByUsername(username);
-
-        if (user == null) {
-            return ResponseEntity.notFound().build();
-        }
+        CachedUser user = userService.findCachedUser(username);
 
-        List<PhoneNumber> phoneNumbers = phoneNumberService.getPhoneNumbersByUserId(user.getId());
+        List<PhoneNumberView> phoneNumbers = phoneNumberService.getPhoneNumbersByUserId(user.id());
 
         List<PhoneNumberDTO> phoneNumberDTOs = phoneNumbers.stream()
                 .map(phone -> new PhoneNumberDTO(
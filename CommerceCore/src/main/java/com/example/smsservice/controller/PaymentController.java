@@ -1,11 +1,13 @@
 package com.example.smsservice.controller;
 
 import com.example.smsservice.dto.TransactionDTO;
+import com.example.smsservice.dto.TransactionPage;
 import com.example.smsservice.model.PaymentTransaction;
 import com.example.smsservice.model.TransactionStatus;
 import com.example.smsservice.model.User;
 import com.example.smsservice.repository.PaymentTransactionRepository;
 import com.example.smsservice.repository.UserRepository;
+import com.example.smsservice.service.PaymentCallbackInbox;
 import com.example.smsservice.service.PaymentService;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -17,12 +19,14 @@ import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -38,14 +42,19 @@ public class PaymentController {
     private String ipnSecret;
 
     private final PaymentService paymentService;
+    private final PaymentCallbackInbox paymentCallbackInbox;
     private static final Logger logger = LoggerFactory.getLogger(PaymentController.class);
     private ObjectMapper objectMapper;
     private final UserRepository userRepository;
     private final PaymentTransactionRepository paymentTransactionRepository;
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
 
-    public PaymentController(PaymentService paymentService, UserRepository userRepository, PaymentTransactionRepository paymentTransactionRepository) {
+
+    public PaymentController(PaymentService paymentService, PaymentCallbackInbox paymentCallbackInbox,
+                             UserRepository userRepository, PaymentTransactionRepository paymentTransactionRepository) {
         this.paymentService = paymentService;
+        this.paymentCallbackInbox = paymentCallbackInbox;
         this.objectMapper = new ObjectMapper();
         this.userRepository = userRepository;
         this.paymentTransactionRepository = paymentTransactionRepository;
@@ -67,11 +76,20 @@ public class PaymentController {
         }
     }
 
+    // Pages are keyset-based; the cursor of the next page is returned in the X-Next-Cursor header.
+    // Without cursor and limit the full list is returned, as before paging existed.
     @GetMapping("/transactions")
-    public ResponseEntity<List<TransactionDTO>> getTransactions(@RequestParam String username) {
+    public ResponseEntity<List<TransactionDTO>> getTransactions(@RequestParam String username,
+                                                                @RequestParam(required = false) TransactionStatus status,
+                                                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                                @RequestParam(required = false) String cursor,
+                                                                @RequestParam(required = false) Integer limit) {
         try {
-            List<TransactionDTO> transactions = paymentService.getTransactionsByUsername(username);
-            return ResponseEntity.ok(transactions);
+            TransactionPage page = paymentService.getTransactionsByUsername(username, status, from, to, cursor, limit);
+            return toPageResponse(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
@@ -88,16 +106,30 @@ public class PaymentController {
     }
 
     @GetMapping("/all-transactions")
-    public ResponseEntity<List<TransactionDTO>> getAllTransactions() {
+    public ResponseEntity<List<TransactionDTO>> getAllTransactions(@RequestParam(required = false) TransactionStatus status,
+                                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                                   @RequestParam(required = false) String cursor,
+                                                                   @RequestParam(required = false) Integer limit) {
         try {
-            List<TransactionDTO> transactions = paymentService.getAllTransactionsExcludingPending();
-            return ResponseEntity.ok(transactions);
+            TransactionPage page = paymentService.getAllTransactionsExcludingPending(status, from, to, cursor, limit);
+            return toPageResponse(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             logger.error("Error fetching all transactions", e); // Логируем ошибку
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
     }
 
+    private ResponseEntity<List<TransactionDTO>> toPageResponse(TransactionPage page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
+    }
+
 
     @PostMapping("/callback")
     public ResponseEntity<String> handlePaymentCallback(@RequestBody Map<String, Object> payload) {
@@ -115,10 +147,11 @@ public class PaymentController {
             String transactionId = payload.get("payment_id") != null ? payload.get("payment_id").toString() : null;
             double amountPaid = payload.containsKey("actually_paid") ? Double.parseDouble(payload.get("actually_paid").toString()) : 0;
 
-            // Delegate logic to the service layer
-            paymentService.processCallback(orderId, transactionId, paymentStatus, amountPaid);
+            // reject unknown statuses up front, applying the callback is left to the inbox workers
+            paymentService.mapStatus(paymentStatus);
+            paymentCallbackInbox.accept(orderId, transactionId, paymentStatus, amountPaid);
 
-            return ResponseEntity.ok("Callback processed successfully");
+            return ResponseEntity.ok("Callback accepted");
         } catch (IllegalArgumentException e) {
             logger.warn("Invalid callback data: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
@@ -51,8 +51,8 @@ public class PhoneNumberController {
 
 
     @GetMapping("/available")
-    public ResponseEntity<List<PhoneNumber>> getAvailableNumbers(@RequestParam String serviceName) {
-        List<PhoneNumber> numbers = phoneNumberService.fetchAvailableNumbers(serviceName);
+    public ResponseEntity<List<PhoneNumberDTO>> getAvailableNumbers(@RequestParam String serviceName) {
+        List<PhoneNumberDTO> numbers = phoneNumberService.fetchAvailableNumbers(serviceName);
         return ResponseEntity.ok(numbers);
     }
 
@@ -61,10 +61,11 @@ public class PhoneNumberController {
         try {
             String username = (String) request.get("username");
             String serviceName = (String) request.get("service");
-            Double price = Double.parseDouble(request.get("price").toString());
+            // optional: the price the client displayed, the charged price is always computed server-side
+            Double price = request.get("price") != null ? Double.valueOf(request.get("price").toString()) : null;
             String rentalType = (String) request.get("rentalType"); // Новый параметр
 
-            if (username == null || serviceName == null || price == null || rentalType == null) {
+            if (username == null || serviceName == null || rentalType == null) {
                 throw new IllegalArgumentException("Missing required parameters");
             }
 
@@ -115,8 +116,8 @@ public class PhoneNumberController {
 
     @GetMapping("/by-owner")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<List<PhoneNumber>> getNumbersByOwner(@RequestParam String username) {
-        List<PhoneNumber> numbers = phoneNumberService.getNumbersByOwner(username);
+    public ResponseEntity<List<PhoneNumberDTO>> getNumbersByOwner(@RequestParam String username) {
+        List<PhoneNumberDTO> numbers = phoneNumberService.getNumbersByOwner(username);
         return ResponseEntity.ok(numbers);
     }
 
@@ -0,0 +1,56 @@
+package com.example.smsservice.controller;
+
+import com.example.smsservice.service.PricingEngine;
+import com.example.smsservice.service.PricingEngine.PriceTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@RequestMapping("/api/prices")
+public class PriceController {
+
+    private static final Logger logger = LoggerFactory.getLogger(PriceController.class);
+    private static final CacheControl PRICES_CACHE_CONTROL = CacheControl.maxAge(60, TimeUnit.SECONDS).cachePublic();
+
+    private final PricingEngine pricingEngine;
+
+    public PriceController(PricingEngine pricingEngine) {
+        this.pricingEngine = pricingEngine;
+    }
+
+    /**
+     * Final prices of all services, as precomputed by {@link PricingEngine}.
+     */
+    @GetMapping
+    public ResponseEntity<?> getPrices(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        PriceTable prices;
+        try {
+            prices = pricingEngine.current();
+        } catch (Exception e) {
+            logger.error("Error while building the price table", e);
+            return ResponseEntity.internalServerError().body("Failed to fetch prices. Please try again later.");
+        }
+        if (prices.etag().equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(prices.etag())
+                    .cacheControl(PRICES_CACHE_CONTROL)
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(prices.etag())
+                .cacheControl(PRICES_CACHE_CONTROL)
+                .body(prices.json());
+    }
+}
@@ -1,30 +1,42 @@
 package com.example.smsservice.controller;
 
+import com.example.smsservice.provider.ProviderCommand;
+import com.example.smsservice.service.ServiceCatalogCache;
+import com.example.smsservice.service.ServiceCatalogCache.CatalogSnapshot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.TimeUnit;
+
 @RestController
 @RequestMapping("/api/proxy")
 public class ProxyController {
 
     private static final Logger logger = LoggerFactory.getLogger(ProxyController.class);
-    private final RestTemplate restTemplate = new RestTemplate();
+    private static final CacheControl CATALOG_CACHE_CONTROL = CacheControl.maxAge(60, TimeUnit.SECONDS).cachePublic();
 
-    @GetMapping("/services")
-    public ResponseEntity<Object> fetchLongTermServices() {
-        String externalApiUrl = "";
+    private final ServiceCatalogCache serviceCatalogCache;
 
-        try {
-            logger.info("Fetching long-term services from external API: {}", externalApiUrl);
-
-            Object response = restTemplate.getForObject(externalApiUrl, Object.class);
+    public ProxyController(ServiceCatalogCache serviceCatalogCache) {
+        this.serviceCatalogCache = serviceCatalogCache;
+    }
 
-            logger.info("Long-term services response received successfully");
-            return ResponseEntity.ok(response);
+    @GetMapping("/services")
+    public ResponseEntity<?> fetchLongTermServices(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        try {
+            CatalogSnapshot catalog = serviceCatalogCache.get(ProviderCommand.LONG_TERM_SERVICES);
+            return catalogResponse(catalog, ifNoneMatch, acceptEncoding);
         } catch (Exception e) {
             logger.error("Error while fetching long-term services from external API", e);
             return ResponseEntity.internalServerError().body("Failed to fetch long-term services. Please try again later.");
@@ -32,17 +44,34 @@ public class ProxyController {
     }
 
     @GetMapping("/short-term-services")
-    public ResponseEntity<Object> fetchShortTermServices() {
-        String externalApiUrl = "";
-
+    public ResponseEntity<?> fetchShortTermServices(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         try {
-            logger.info("Fetching short-term services from external API: {}", externalApiUrl);
-            Object response = restTemplate.getForObject(externalApiUrl, Object.class);
-            logger.info("Short-term services response received successfully");
-            return ResponseEntity.ok(response);
+            CatalogSnapshot catalog = serviceCatalogCache.get(ProviderCommand.SHORT_TERM_SERVICES);
+            return catalogResponse(catalog, ifNoneMatch, acceptEncoding);
         } catch (Exception e) {
             logger.error("Error while fetching short-term services from external API", e);
             return ResponseEntity.internalServerError().body("Failed to fetch short-term services. Please try again later.");
         }
     }
-}
\ No newline at end of file
+
+    private ResponseEntity<?> catalogResponse(CatalogSnapshot catalog, String ifNoneMatch, String acceptEncoding) {
+        if (catalog.etag().equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(catalog.etag())
+                    .cacheControl(CATALOG_CACHE_CONTROL)
+                    .build();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(catalog.etag())
+                .cacheControl(CATALOG_CACHE_CONTROL)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(catalog.gzip());
+        }
+        return response.body(catalog.json());
+    }
+}
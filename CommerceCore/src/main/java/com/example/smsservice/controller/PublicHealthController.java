@@ -0,0 +1,32 @@
+package com.example.smsservice.controller;
+
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.actuate.health.HttpCodeStatusMapper;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Keeps {@code /actuator/health} on the public port for load balancers now that the actuator endpoints
+ * live on the internal management port. Answers with the overall status only.
+ */
+@RestController
+public class PublicHealthController {
+
+    private final HealthEndpoint healthEndpoint;
+    private final HttpCodeStatusMapper statusMapper;
+
+    public PublicHealthController(HealthEndpoint healthEndpoint, HttpCodeStatusMapper statusMapper) {
+        this.healthEndpoint = healthEndpoint;
+        this.statusMapper = statusMapper;
+    }
+
+    @GetMapping("/actuator/health")
+    public ResponseEntity<Map<String, String>> health() {
+        Status status = healthEndpoint.health().getStatus();
+        return ResponseEntity.status(statusMapper.getStatusCode(status)).body(Map.of("status", status.getCode()));
+    }
+}
@@ -2,8 +2,14 @@ package com.example.smsservice.controller;
 
 import com.example.smsservice.dto.SMSMessageDTO;
 import com.example.smsservice.service.PhoneNumberService;
+import com.example.smsservice.service.SmsStreamRegistry;
+import com.example.smsservice.util.JwtUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Map;
@@ -13,9 +19,41 @@ import java.util.Map;
 public class SMSController {
 
     private final PhoneNumberService phoneNumberService;
+    private final SmsStreamRegistry smsStreamRegistry;
+    private final JwtUtil jwtUtil;
+    private final long streamTokenTtlMs;
 
-    public SMSController(PhoneNumberService phoneNumberService) {
+    public SMSController(PhoneNumberService phoneNumberService, SmsStreamRegistry smsStreamRegistry, JwtUtil jwtUtil,
+                         @Value("${sms.stream.token-ttl-ms:60000}") long streamTokenTtlMs) {
         this.phoneNumberService = phoneNumberService;
+        this.smsStreamRegistry = smsStreamRegistry;
+        this.jwtUtil = jwtUtil;
+        this.streamTokenTtlMs = streamTokenTtlMs;
+    }
+
+    // Pushes new SMS for all of the caller's numbers; reconnecting clients resume from Last-Event-ID.
+    // A browser EventSource opens /stream?token=<stream token>&lastEventId=<id> instead of sending headers.
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamSMSMessages(Authentication authentication,
+                                                        @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+                                                        @RequestParam(value = "lastEventId", required = false) String lastEventIdParam) {
+        String lastEventId = lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam;
+        Long sinceId;
+        try {
+            sinceId = lastEventId == null || lastEventId.isBlank() ? null : Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException ex) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok()
+                .header("X-Accel-Buffering", "no")
+                .body(smsStreamRegistry.register(authentication.getName(), sinceId));
+    }
+
+    // Issues a short-lived token for /stream; fetch a new one before reopening an EventSource
+    @PostMapping("/stream-token")
+    public ResponseEntity<Map<String, Object>> issueStreamToken(@RequestHeader("Authorization") String authorization) {
+        String token = jwtUtil.generateStreamToken(jwtUtil.verify(authorization.substring(7)), streamTokenTtlMs);
+        return ResponseEntity.ok(Map.of("token", token, "expiresInMs", streamTokenTtlMs));
     }
 
     @PostMapping("/messages")
@@ -26,7 +64,9 @@ public class SMSController {
         }
 
         try {
-            List<SMSMessageDTO> smsMessages = phoneNumberService.fetchSMSMessagesForPhoneNumber(phoneNumber);
+            String since = requestBody.get("since");
+            long sinceId = since == null || since.isBlank() ? 0 : Long.parseLong(since);
+            List<SMSMessageDTO> smsMessages = phoneNumberService.fetchSMSMessagesForPhoneNumber(phoneNumber, sinceId);
             return ResponseEntity.ok(smsMessages);
         } catch (IllegalArgumentException ex) {
             return ResponseEntity.badRequest().body(null);
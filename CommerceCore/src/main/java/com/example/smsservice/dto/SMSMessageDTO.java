@@ -8,6 +8,7 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 public class SMSMessageDTO {
+    private Long id;
     private String date;
     private String sender;
     private String message;
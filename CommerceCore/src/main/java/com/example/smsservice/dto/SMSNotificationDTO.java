@@ -0,0 +1,16 @@
+package com.example.smsservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SMSNotificationDTO {
+    private Long id;
+    private String phoneNumber;
+    private String date;
+    private String sender;
+    private String message;
+}
@@ -1,6 +1,7 @@
 package com.example.smsservice.dto;
 
 import com.example.smsservice.model.TransactionStatus;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -16,4 +17,7 @@ public class TransactionDTO {
     private TransactionStatus status;
     private LocalDateTime date;
     private String username;
+    // keyset position only, not part of the response
+    @JsonIgnore
+    private Long id;
 }
@@ -0,0 +1,16 @@
+package com.example.smsservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransactionPage {
+    private List<TransactionDTO> items;
+    // null on the last page
+    private String nextCursor;
+}
@@ -0,0 +1,17 @@
+package com.example.smsservice.dto;
+
+import com.example.smsservice.model.Role;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserSummaryDTO {
+    private Long id;
+    private String username;
+    private String email;
+    private Role role;
+    private double balance;
+}
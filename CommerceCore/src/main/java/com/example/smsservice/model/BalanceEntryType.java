@@ -0,0 +1,9 @@
+package com.example.smsservice.model;
+
+public enum BalanceEntryType {
+    OPENING,
+    DEPOSIT,
+    PURCHASE,
+    REFUND,
+    ADJUSTMENT
+}
@@ -0,0 +1,53 @@
+package com.example.smsservice.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Append-only record of a single balance change. The sum of a user's entries always equals
+ * {@code users.balance}; {@link com.example.smsservice.service.BalanceService} writes both in one transaction.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "balance_ledger", indexes = {
+        @Index(name = "idx_balance_ledger_user", columnList = "user_id, id")
+})
+public class BalanceLedgerEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false, updatable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, updatable = false, length = 16)
+    private BalanceEntryType type;
+
+    // signed: credits are positive, debits negative
+    @Column(nullable = false, updatable = false)
+    private double amount;
+
+    @Column(name = "balance_after", nullable = false, updatable = false)
+    private double balanceAfter;
+
+    @Column(updatable = false)
+    private String reference;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    public BalanceLedgerEntry(Long userId, BalanceEntryType type, double amount, double balanceAfter, String reference) {
+        this.userId = userId;
+        this.type = type;
+        this.amount = amount;
+        this.balanceAfter = balanceAfter;
+        this.reference = reference;
+        this.createdAt = Instant.now();
+    }
+}
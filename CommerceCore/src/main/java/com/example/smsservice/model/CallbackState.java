@@ -0,0 +1,8 @@
+package com.example.smsservice.model;
+
+public enum CallbackState {
+    NEW,
+    PROCESSED,
+    // gave up after repeated errors or an unknown status, kept for inspection
+    FAILED
+}
@@ -0,0 +1,8 @@
+package com.example.smsservice.model;
+
+public enum EmailState {
+    PENDING,
+    SENT,
+    // retries exhausted, left for inspection
+    DEAD
+}
@@ -0,0 +1,7 @@
+package com.example.smsservice.model;
+
+public class InsufficientBalanceException extends RuntimeException {
+    public InsufficientBalanceException(String message) {
+        super(message);
+    }
+}
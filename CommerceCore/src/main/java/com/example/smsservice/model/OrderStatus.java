@@ -0,0 +1,8 @@
+package com.example.smsservice.model;
+
+public enum OrderStatus {
+    // funds reserved (purchase) or number locked (return), provider call not yet confirmed
+    PENDING,
+    COMPLETED,
+    FAILED
+}
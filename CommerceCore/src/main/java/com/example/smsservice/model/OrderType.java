@@ -0,0 +1,6 @@
+package com.example.smsservice.model;
+
+public enum OrderType {
+    PURCHASE,
+    RETURN
+}
@@ -9,6 +9,7 @@ import lombok.NoArgsConstructor;
 import java.time.Instant;
 
 @Entity
+@Table(indexes = @Index(name = "idx_reset_token_expiry", columnList = "expiryDate"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,57 @@
+package com.example.smsservice.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * A received payment IPN, stored before it is applied. The unique key on (payment_id, status) turns
+ * provider retries of the same notification into no-ops.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "payment_callbacks",
+        uniqueConstraints = @UniqueConstraint(name = "uk_payment_callback", columnNames = {"payment_id", "status"}),
+        indexes = {
+                @Index(name = "idx_payment_callback_state", columnList = "state, id"),
+                @Index(name = "idx_payment_callback_due", columnList = "state, next_attempt_at"),
+                @Index(name = "idx_payment_callback_order", columnList = "order_id, state")
+        })
+public class PaymentCallback {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // long enough for the "order:" + order_id fallback key
+    @Column(name = "payment_id", nullable = false, length = 262)
+    private String paymentId;
+
+    @Column(name = "status", nullable = false, length = 32)
+    private String paymentStatus;
+
+    @Column(name = "order_id", nullable = false)
+    private String orderId;
+
+    private double amountPaid;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private CallbackState state;
+
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt;
+
+    private String lastError;
+
+    @Column(name = "received_at", nullable = false)
+    private Instant receivedAt;
+
+    @Column(name = "processed_at")
+    private Instant processedAt;
+}
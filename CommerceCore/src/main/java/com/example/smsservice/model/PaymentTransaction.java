@@ -10,7 +10,9 @@ import java.time.LocalDateTime;
 @Table(name = "payment_transaction", indexes = {
         @Index(name = "idx_order_id", columnList = "orderId"),
         @Index(name = "idx_transaction_id", columnList = "transaction_id"),
-        @Index(name = "idx_user_id", columnList = "user_id")
+        @Index(name = "idx_user_id", columnList = "user_id"),
+        @Index(name = "idx_user_created", columnList = "user_id, created_at, id"),
+        @Index(name = "idx_status_created", columnList = "status, created_at, id")
 })
 public class PaymentTransaction {
 
@@ -30,6 +32,10 @@ public class PaymentTransaction {
     @Column(name = "transaction_id", nullable = true)
     private String transactionId;
 
+    // NOWPayments invoice id, known from the moment the invoice is created
+    @Column(name = "invoice_id")
+    private String invoiceId;
+
     @ManyToOne
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
@@ -13,7 +13,13 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "PHONE_NUMBERS")
+@Table(name = "PHONE_NUMBERS", indexes = {
+        @Index(name = "idx_phone_numbers_number", columnList = "phoneNumber"),
+        @Index(name = "idx_phone_numbers_user", columnList = "user_id"),
+        @Index(name = "idx_phone_numbers_service_status", columnList = "serviceName, status"),
+        @Index(name = "idx_phone_numbers_status", columnList = "status"),
+        @Index(name = "idx_phone_numbers_status_expires", columnList = "status, expires")
+})
 public class PhoneNumber {
 
     @Id
@@ -26,6 +32,10 @@ public class PhoneNumber {
     private String status;
     private String externalId;
 
+    // "long_term" or "short", as chosen at purchase; decides how the number is handed back
+    @Column(name = "rental_type", length = 16)
+    private String rentalType;
+
     @ManyToOne
     @JoinColumn(name = "user_id")
     private User user;
@@ -0,0 +1,67 @@
+package com.example.smsservice.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Persisted state of a purchase or return while the provider is being called. An order that stays
+ * {@link OrderStatus#PENDING} after a crash is resolved by the recovery job in
+ * {@link com.example.smsservice.service.PhoneNumberService}.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "purchase_orders", indexes = {
+        @Index(name = "idx_purchase_orders_status", columnList = "status, updated_at")
+})
+public class PurchaseOrder {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private OrderType type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private OrderStatus status;
+
+    @Column(nullable = false)
+    private String username;
+
+    private String serviceName;
+    private String rentalType;
+
+    @Column(nullable = false)
+    private double amount;
+
+    private String phoneNumber;
+    private String externalId;
+
+    // status of the number before a return locked it, restored if the return fails
+    private String previousStatus;
+
+    private String failureReason;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = Instant.now();
+        updatedAt = createdAt;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = Instant.now();
+    }
+}
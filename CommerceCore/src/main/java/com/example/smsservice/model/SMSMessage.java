@@ -4,9 +4,17 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.Instant;
 
 @Entity
-@Table(name = "SMS_MESSAGES")
+@Table(name = "SMS_MESSAGES",
+        uniqueConstraints = @UniqueConstraint(name = "uk_sms_phone_fingerprint", columnNames = {"phone_number_id", "fingerprint"}),
+        indexes = {
+                @Index(name = "idx_sms_phone_id", columnList = "phone_number_id, id"),
+                @Index(name = "idx_sms_received_at", columnList = "received_at")
+        })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -16,12 +24,20 @@ public class SMSMessage {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "phone_number_id", nullable = false)
+    @ToString.Exclude
     private PhoneNumber phoneNumber;
 
     private String message;
     private String sender;
     private String status;
     private String dateTime;
-}
\ No newline at end of file
+
+    // hash of dateTime/sender/message, the provider returns the full history on every read
+    @Column(length = 64)
+    private String fingerprint;
+
+    @Column(name = "received_at")
+    private Instant receivedAt;
+}
@@ -5,11 +5,15 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
+import org.hibernate.annotations.ColumnDefault;
 
+import java.time.Instant;
 import java.util.List;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = {
+        @Index(name = "idx_users_username", columnList = "username")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -35,6 +39,14 @@ public class User {
     @Column(nullable = false)
     private double balance = 0.0;
 
+    // bumped whenever previously issued tokens must stop working (password change, role change)
+    @Column(name = "token_version", nullable = false)
+    @ColumnDefault("0")
+    private int tokenVersion = 0;
+
+    @Column(name = "token_version_changed_at")
+    private Instant tokenVersionChangedAt;
+
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, orphanRemoval = true)
     @ToString.Exclude
     private List<PhoneNumber> phoneNumbers;
@@ -0,0 +1,213 @@
+package com.example.smsservice.provider;
+
+import com.example.smsservice.model.ApiException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ConnectionRequestTimeoutException;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.net.URIBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ProviderClient} over the provider's HTTP API. Connections are pooled and kept alive, every
+ * command has its own connect/read timeouts and concurrency limit, and responses are parsed into typed records.
+ */
+@Component
+@ConditionalOnProperty(name = "api.mock.enabled", havingValue = "false", matchIfMissing = true)
+public class HttpProviderClient implements ProviderClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpProviderClient.class);
+
+    private final ProviderProperties properties;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final ProviderConcurrencyLimiter concurrencyLimiter;
+    private final MeterRegistry meterRegistry;
+
+    public HttpProviderClient(ProviderProperties properties, ProviderConcurrencyLimiter concurrencyLimiter,
+                              MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.meterRegistry = meterRegistry;
+        this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(properties.getMaxConnections())
+                .setMaxConnPerRoute(properties.getMaxConnectionsPerRoute())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(properties.getConnectTimeoutMs()))
+                        .setTimeToLive(TimeValue.ofMilliseconds(properties.getConnectionTimeToLiveMs()))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(5))
+                        .build())
+                .build();
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(properties.getIdleEvictMs()))
+                .disableCookieManagement()
+                .build();
+
+        Gauge.builder("provider.pool.leased", connectionManager, pool -> pool.getTotalStats().getLeased())
+                .description("Provider connections currently in use")
+                .register(meterRegistry);
+        Gauge.builder("provider.pool.pending", connectionManager, pool -> pool.getTotalStats().getPending())
+                .description("Provider calls waiting for a pooled connection")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public ProviderNumber rentShortTerm(String serviceName) {
+        return execute(ProviderCommand.REQUEST, Map.of("service", serviceName),
+                body -> ProviderResponseParser.parseNumber(body, ProviderCommand.REQUEST));
+    }
+
+    @Override
+    public ProviderNumber rentLongTerm(String serviceName, int durationDays) {
+        return execute(ProviderCommand.LTR_RENT, Map.of("service", serviceName, "duration", String.valueOf(durationDays)),
+                body -> ProviderResponseParser.parseNumber(body, ProviderCommand.LTR_RENT));
+    }
+
+    @Override
+    public void releaseLongTerm(String mdn, String serviceName) {
+        execute(ProviderCommand.LTR_RELEASE, Map.of("mdn", mdn, "service", serviceName), body -> {
+            ProviderResponseParser.parseAck(body, ProviderCommand.LTR_RELEASE);
+            return null;
+        });
+    }
+
+    @Override
+    public void reject(String externalId) {
+        execute(ProviderCommand.REJECT, Map.of("id", externalId), body -> {
+            ProviderResponseParser.parseAck(body, ProviderCommand.REJECT);
+            return null;
+        });
+    }
+
+    @Override
+    public List<ProviderSms> readSms(String mdn) {
+        return execute(ProviderCommand.READ_SMS, Map.of("mdn", mdn), ProviderResponseParser::parseSms);
+    }
+
+    @Override
+    public byte[] fetchCatalog(ProviderCommand catalog) {
+        String url = switch (catalog) {
+            case LONG_TERM_SERVICES -> properties.getLongTermServicesUrl();
+            case SHORT_TERM_SERVICES -> properties.getShortTermServicesUrl();
+            default -> throw new IllegalArgumentException("Not a catalog command: " + catalog);
+        };
+        if (url == null || url.isBlank()) {
+            throw new ApiException("Catalog URL for " + catalog + " is not configured");
+        }
+        return send(catalog, URI.create(url), response -> {
+            if (response.getCode() / 100 != 2) {
+                throw new ApiException("Catalog request failed with HTTP status " + response.getCode());
+            }
+            return EntityUtils.toByteArray(response.getEntity());
+        });
+    }
+
+    private <T> T execute(ProviderCommand command, Map<String, String> params, BodyParser<T> parser) {
+        if (properties.getUrl() == null || properties.getUrl().isBlank()) {
+            throw new ApiException("Provider API URL is not configured");
+        }
+        URI uri;
+        try {
+            URIBuilder builder = new URIBuilder(properties.getUrl())
+                    .addParameter("cmd", command.cmd())
+                    .addParameter("user", properties.getUser())
+                    .addParameter("api_key", properties.getKey());
+            params.forEach(builder::addParameter);
+            uri = builder.build();
+        } catch (URISyntaxException e) {
+            throw new ApiException("Invalid provider URL: " + e.getMessage(), e);
+        }
+
+        logger.debug("Sending API request to command '{}'", command.cmd());
+        return send(command, uri, response -> {
+            HttpEntity entity = response.getEntity();
+            try (InputStream body = entity != null ? entity.getContent() : null) {
+                return parser.parse(body);
+            }
+        });
+    }
+
+    private <T> T send(ProviderCommand command, URI uri, HttpClientResponseHandler<T> handler) {
+        HttpGet request = new HttpGet(uri);
+        request.setConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(properties.connectTimeoutMs(command)))
+                .setResponseTimeout(Timeout.ofMilliseconds(properties.readTimeoutMs(command)))
+                .build());
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        boolean permitted = false;
+        try {
+            permitted = concurrencyLimiter.tryAcquire(command);
+            if (!permitted) {
+                outcome = "throttled";
+                throw new ApiException("Failed to call API command '" + command + "': too many concurrent calls");
+            }
+            T result = httpClient.execute(request, handler);
+            outcome = "success";
+            return result;
+        } catch (ApiException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException("Failed to call API command '" + command + "': interrupted", e);
+        } catch (ConnectionRequestTimeoutException e) {
+            outcome = "pool_timeout";
+            throw new ApiException("Failed to call API command '" + command + "': " + e.getMessage(), e);
+        } catch (SocketTimeoutException e) {
+            outcome = "timeout";
+            throw new ApiException("Failed to call API command '" + command + "': " + e.getMessage(), e);
+        } catch (IOException | RuntimeException e) {
+            throw new ApiException("Failed to call API command '" + command + "': " + e.getMessage(), e);
+        } finally {
+            if (permitted) {
+                concurrencyLimiter.release(command);
+            }
+            sample.stop(Timer.builder("provider.requests")
+                    .description("Calls to the SMS provider API")
+                    .tag("command", command.name().toLowerCase())
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close provider HTTP client", e);
+        }
+        connectionManager.close();
+    }
+
+    @FunctionalInterface
+    private interface BodyParser<T> {
+        T parse(InputStream body) throws IOException;
+    }
+}
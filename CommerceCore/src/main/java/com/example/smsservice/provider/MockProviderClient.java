@@ -0,0 +1,350 @@
+package com.example.smsservice.provider;
+
+import com.example.smsservice.model.ApiException;
+import com.example.smsservice.provider.MockProviderProperties.Faults;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory stand-in for the provider, used with {@code api.mock.enabled=true}. Number ids, MDNs and
+ * verification codes come from a seeded sequence, every rented number receives the scripted SMS once
+ * their delays have passed, and latency, timeouts and error responses can be injected per command, in
+ * the configuration or at runtime. Responses are rendered as provider JSON and parsed by
+ * {@link ProviderResponseParser}, exactly like real ones.
+ */
+@Component
+@ConditionalOnProperty(name = "api.mock.enabled", havingValue = "true")
+public class MockProviderClient implements ProviderClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(MockProviderClient.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final MockProviderProperties properties;
+    private final ProviderProperties providerProperties;
+    private final ProviderConcurrencyLimiter concurrencyLimiter;
+    private final MeterRegistry meterRegistry;
+    private final Random random;
+    private final Map<String, String> catalog;
+    private final byte[] catalogJson;
+
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Map<String, MockNumber> numbersById = new ConcurrentHashMap<>();
+    private final Map<String, MockNumber> numbersByMdn = new ConcurrentHashMap<>();
+
+    // replaced as a whole when faults are changed at runtime
+    private volatile Map<ProviderCommand, Faults> faults;
+
+    private final AtomicLong rented = new AtomicLong();
+    private final AtomicLong smsDelivered = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong injectedTimeouts = new AtomicLong();
+
+    public MockProviderClient(MockProviderProperties properties, ProviderProperties providerProperties,
+                              ProviderConcurrencyLimiter concurrencyLimiter, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.providerProperties = providerProperties;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.meterRegistry = meterRegistry;
+        this.random = new Random(properties.getSeed());
+        this.catalog = new LinkedHashMap<>();
+        for (String service : properties.getServices()) {
+            String[] fields = service.split(":");
+            catalog.put(fields[0].trim().toLowerCase(), service);
+        }
+        this.catalogJson = render(json -> {
+            json.writeStringField("status", "ok");
+            json.writeArrayFieldStart("message");
+            for (String service : catalog.values()) {
+                String[] fields = service.split(":");
+                json.writeStartObject();
+                json.writeStringField("name", fields[0].trim());
+                json.writeStringField("price", fields[1].trim());
+                json.writeStringField("ltr_price", fields[2].trim());
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        });
+        Map<ProviderCommand, Faults> configured = new EnumMap<>(ProviderCommand.class);
+        for (ProviderCommand command : ProviderCommand.values()) {
+            configured.put(command, properties.getFaults().getOrDefault(command, properties.getDefaults()));
+        }
+        this.faults = configured;
+        logger.warn("Provider API is mocked, numbers and SMS are simulated");
+    }
+
+    @Override
+    public ProviderNumber rentShortTerm(String serviceName) {
+        return call(ProviderCommand.REQUEST, () -> {
+            MockNumber number = allocate(serviceName, LocalDateTime.now().plusSeconds(properties.getShortTermTtlSeconds()));
+            if (number == null) {
+                return errorBody("No numbers available");
+            }
+            return render(json -> {
+                json.writeStringField("status", "ok");
+                json.writeArrayFieldStart("message");
+                json.writeStartObject();
+                json.writeStringField("id", number.id());
+                json.writeStringField("mdn", number.mdn());
+                json.writeStringField("service", number.service());
+                json.writeNumberField("till_expiration", properties.getShortTermTtlSeconds());
+                json.writeEndObject();
+                json.writeEndArray();
+            });
+        }, body -> ProviderResponseParser.parseNumber(body, ProviderCommand.REQUEST));
+    }
+
+    @Override
+    public ProviderNumber rentLongTerm(String serviceName, int durationDays) {
+        return call(ProviderCommand.LTR_RENT, () -> {
+            MockNumber number = allocate(serviceName, LocalDateTime.now().plusDays(durationDays));
+            if (number == null) {
+                return errorBody("No numbers available");
+            }
+            return render(json -> {
+                json.writeStringField("status", "ok");
+                json.writeObjectFieldStart("message");
+                json.writeStringField("id", number.id());
+                json.writeStringField("mdn", number.mdn());
+                json.writeStringField("service", number.service());
+                json.writeStringField("expires", number.expires().format(DATE_TIME_FORMAT));
+                json.writeEndObject();
+            });
+        }, body -> ProviderResponseParser.parseNumber(body, ProviderCommand.LTR_RENT));
+    }
+
+    @Override
+    public void releaseLongTerm(String mdn, String serviceName) {
+        call(ProviderCommand.LTR_RELEASE, () -> {
+            MockNumber number = numbersByMdn.remove(mdn);
+            if (number == null) {
+                return errorBody("Number not found");
+            }
+            numbersById.remove(number.id());
+            return okBody();
+        }, body -> {
+            ProviderResponseParser.parseAck(body, ProviderCommand.LTR_RELEASE);
+            return null;
+        });
+    }
+
+    @Override
+    public void reject(String externalId) {
+        call(ProviderCommand.REJECT, () -> {
+            MockNumber number = numbersById.remove(externalId);
+            if (number == null) {
+                return errorBody("Number not found");
+            }
+            numbersByMdn.remove(number.mdn());
+            return okBody();
+        }, body -> {
+            ProviderResponseParser.parseAck(body, ProviderCommand.REJECT);
+            return null;
+        });
+    }
+
+    @Override
+    public List<ProviderSms> readSms(String mdn) {
+        return call(ProviderCommand.READ_SMS, () -> {
+            MockNumber number = numbersByMdn.get(mdn);
+            if (number == null) {
+                return errorBody("Number not found");
+            }
+            List<Long> delays = properties.getSmsDelaysMs();
+            long sinceRent = Duration.between(number.rentedAt(), LocalDateTime.now()).toMillis();
+            int due = (int) delays.stream().filter(delay -> delay <= sinceRent).count();
+            if (due == 0) {
+                return errorBody("No messages");
+            }
+            int before = number.delivered().getAndAccumulate(due, Math::max);
+            if (due > before) {
+                smsDelivered.addAndGet(due - before);
+            }
+            return render(json -> {
+                json.writeStringField("status", "ok");
+                json.writeArrayFieldStart("message");
+                for (int i = 0; i < delays.size(); i++) {
+                    if (delays.get(i) > sinceRent) {
+                        continue;
+                    }
+                    json.writeStartObject();
+                    json.writeStringField("date_time", number.rentedAt().plus(Duration.ofMillis(delays.get(i))).format(DATE_TIME_FORMAT));
+                    json.writeStringField("from", number.service());
+                    json.writeStringField("reply", properties.getSmsText()
+                            .replace("{service}", number.service())
+                            .replace("{code}", number.code(i)));
+                    json.writeEndObject();
+                }
+                json.writeEndArray();
+            });
+        }, ProviderResponseParser::parseSms);
+    }
+
+    @Override
+    public byte[] fetchCatalog(ProviderCommand catalog) {
+        if (catalog != ProviderCommand.LONG_TERM_SERVICES && catalog != ProviderCommand.SHORT_TERM_SERVICES) {
+            throw new IllegalArgumentException("Not a catalog command: " + catalog);
+        }
+        return call(catalog, () -> catalogJson, InputStream::readAllBytes);
+    }
+
+    /**
+     * Replaces the injected faults of one command, or of every command if {@code command} is null.
+     */
+    public void setFaults(ProviderCommand command, Faults commandFaults) {
+        Map<ProviderCommand, Faults> updated = new EnumMap<>(faults);
+        if (command == null) {
+            updated.replaceAll((key, value) -> commandFaults);
+        } else {
+            updated.put(command, commandFaults);
+        }
+        faults = updated;
+        logger.warn("Mock provider faults changed for {}: {}", command == null ? "all commands" : command, commandFaults);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("activeNumbers", numbersById.size());
+        stats.put("rented", rented.get());
+        stats.put("smsDelivered", smsDelivered.get());
+        stats.put("injectedErrors", injectedErrors.get());
+        stats.put("injectedTimeouts", injectedTimeouts.get());
+        stats.put("faults", faults);
+        return stats;
+    }
+
+    private MockNumber allocate(String serviceName, LocalDateTime expires) {
+        String service = catalog.get(serviceName.trim().toLowerCase());
+        if (service == null) {
+            return null;
+        }
+        long id = nextId.getAndIncrement();
+        MockNumber number = new MockNumber(String.valueOf(id), String.format("1555%07d", id),
+                service.split(":")[0].trim(), LocalDateTime.now(), expires,
+                new SplittableRandom(properties.getSeed() ^ id).nextLong(), new AtomicInteger());
+        numbersById.put(number.id(), number);
+        numbersByMdn.put(number.mdn(), number);
+        rented.incrementAndGet();
+        return number;
+    }
+
+    private <T> T call(ProviderCommand command, ResponseSupplier response, BodyParser<T> parser) {
+        Faults commandFaults = faults.get(command);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        boolean permitted = false;
+        try {
+            permitted = concurrencyLimiter.tryAcquire(command);
+            if (!permitted) {
+                outcome = "throttled";
+                throw new ApiException("Failed to call API command '" + command + "': too many concurrent calls");
+            }
+            long latency = commandFaults.getLatencyMs()
+                    + (commandFaults.getJitterMs() > 0 ? (long) (random.nextDouble() * commandFaults.getJitterMs()) : 0);
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+            if (random.nextDouble() < commandFaults.getTimeoutRate()) {
+                injectedTimeouts.incrementAndGet();
+                Thread.sleep(providerProperties.readTimeoutMs(command));
+                outcome = "timeout";
+                throw new ApiException("Failed to call API command '" + command + "': Read timed out");
+            }
+            byte[] body;
+            if (random.nextDouble() < commandFaults.getErrorRate()) {
+                injectedErrors.incrementAndGet();
+                body = errorBody(commandFaults.getErrorMessage());
+            } else {
+                body = response.get();
+            }
+            T result = parser.parse(new ByteArrayInputStream(body));
+            outcome = "success";
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException("Failed to call API command '" + command + "': interrupted", e);
+        } catch (IOException e) {
+            throw new ApiException("Failed to call API command '" + command + "': " + e.getMessage(), e);
+        } finally {
+            if (permitted) {
+                concurrencyLimiter.release(command);
+            }
+            sample.stop(Timer.builder("provider.requests")
+                    .description("Calls to the SMS provider API")
+                    .tag("command", command.name().toLowerCase())
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    private static byte[] okBody() {
+        return "{\"status\":\"ok\",\"message\":\"OK\"}".getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] errorBody(String message) {
+        return render(json -> {
+            json.writeStringField("status", "error");
+            json.writeStringField("message", message);
+        });
+    }
+
+    private static byte[] render(JsonWriter fields) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(buffer)) {
+            json.writeStartObject();
+            fields.write(json);
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    private record MockNumber(String id, String mdn, String service, LocalDateTime rentedAt, LocalDateTime expires,
+                              long codeSeed, AtomicInteger delivered) {
+
+        String code(int index) {
+            return String.format("%06d", Math.floorMod(new SplittableRandom(codeSeed + index).nextInt(), 1_000_000));
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResponseSupplier {
+        byte[] get();
+    }
+
+    @FunctionalInterface
+    private interface BodyParser<T> {
+        T parse(InputStream body) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface JsonWriter {
+        void write(JsonGenerator json) throws IOException;
+    }
+}
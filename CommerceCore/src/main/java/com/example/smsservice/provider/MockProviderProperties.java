@@ -0,0 +1,42 @@
+package com.example.smsservice.provider;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings of {@link MockProviderClient}, only read when {@code api.mock.enabled=true}.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "api.mock")
+public class MockProviderProperties {
+    private boolean enabled;
+    private long seed = 1;
+
+    // name:short-term price:long-term price, served by both catalogs
+    private List<String> services = List.of("Google:0.50:10.00", "Telegram:0.35:8.00", "WhatsApp:0.60:12.00");
+    private long shortTermTtlSeconds = 1200;
+
+    // every rented number receives one SMS per entry, that long after the rent
+    private List<Long> smsDelaysMs = List.of(5_000L);
+    private String smsText = "Your {service} verification code is {code}";
+
+    private Faults defaults = new Faults();
+    // per-command overrides of the defaults
+    private Map<ProviderCommand, Faults> faults = new EnumMap<>(ProviderCommand.class);
+
+    @Data
+    public static class Faults {
+        private long latencyMs;
+        private long jitterMs;
+        private double errorRate;
+        // the call waits for the command's read timeout and then fails like a timed out HTTP call
+        private double timeoutRate;
+        private String errorMessage = "Service temporarily unavailable";
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.smsservice.provider;
+
+import java.util.List;
+
+/**
+ * Single entry point for everything that talks to the SMS provider. {@link HttpProviderClient} calls the
+ * real API; with {@code api.mock.enabled=true} the in-memory {@link MockProviderClient} is used instead.
+ * Failures, including error responses of the provider, are reported as
+ * {@link com.example.smsservice.model.ApiException}.
+ */
+public interface ProviderClient {
+
+    ProviderNumber rentShortTerm(String serviceName);
+
+    ProviderNumber rentLongTerm(String serviceName, int durationDays);
+
+    void releaseLongTerm(String mdn, String serviceName);
+
+    void reject(String externalId);
+
+    List<ProviderSms> readSms(String mdn);
+
+    /**
+     * Returns the raw JSON body of a service catalog, exactly as the provider sent it.
+     */
+    byte[] fetchCatalog(ProviderCommand catalog);
+}
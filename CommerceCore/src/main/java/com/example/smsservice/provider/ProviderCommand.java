@@ -0,0 +1,37 @@
+package com.example.smsservice.provider;
+
+/**
+ * Commands of the SMS provider API together with their default timeouts.
+ * Catalog commands have no {@code cmd} value, they are fetched from their own URLs.
+ */
+public enum ProviderCommand {
+    REQUEST("request", 3_000, 20_000),
+    LTR_RENT("ltr_rent", 3_000, 20_000),
+    LTR_RELEASE("ltr_release", 3_000, 10_000),
+    REJECT("reject", 3_000, 10_000),
+    READ_SMS("read_sms", 2_000, 5_000),
+    LONG_TERM_SERVICES(null, 3_000, 10_000),
+    SHORT_TERM_SERVICES(null, 3_000, 10_000);
+
+    private final String cmd;
+    private final int defaultConnectTimeoutMs;
+    private final int defaultReadTimeoutMs;
+
+    ProviderCommand(String cmd, int defaultConnectTimeoutMs, int defaultReadTimeoutMs) {
+        this.cmd = cmd;
+        this.defaultConnectTimeoutMs = defaultConnectTimeoutMs;
+        this.defaultReadTimeoutMs = defaultReadTimeoutMs;
+    }
+
+    public String cmd() {
+        return cmd;
+    }
+
+    public int defaultConnectTimeoutMs() {
+        return defaultConnectTimeoutMs;
+    }
+
+    public int defaultReadTimeoutMs() {
+        return defaultReadTimeoutMs;
+    }
+}
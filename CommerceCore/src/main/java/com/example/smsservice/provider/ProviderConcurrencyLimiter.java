@@ -0,0 +1,72 @@
+package com.example.smsservice.provider;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the number of concurrent provider calls per command ({@code external.api.max-concurrent-calls},
+ * overridden per command under {@code external.api.concurrent-calls}).
+ * <p>
+ * On virtual threads nothing else bounds how many requests wait on the provider at once, so these permits
+ * are the limit: a burst of one command, typically {@code read_sms}, cannot take every pooled connection
+ * away from purchases. A call that gets no permit within the command's connect timeout fails.
+ */
+@Component
+public class ProviderConcurrencyLimiter {
+
+    private final ProviderProperties properties;
+    private final Map<ProviderCommand, Semaphore> permits = new EnumMap<>(ProviderCommand.class);
+
+    public ProviderConcurrencyLimiter(ProviderProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        for (ProviderCommand command : ProviderCommand.values()) {
+            int limit = properties.maxConcurrentCalls(command);
+            if (limit <= 0) {
+                continue;
+            }
+            Semaphore semaphore = new Semaphore(limit, true);
+            permits.put(command, semaphore);
+            Gauge.builder("provider.calls.active", semaphore, s -> limit - s.availablePermits())
+                    .description("Provider calls currently holding a concurrency permit")
+                    .tag("command", command.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Waits up to the command's connect timeout for a permit. Returns {@code false} if none became free;
+     * after {@code true} the caller must {@link #release} the permit.
+     */
+    public boolean tryAcquire(ProviderCommand command) throws InterruptedException {
+        Semaphore semaphore = permits.get(command);
+        return semaphore == null
+                || semaphore.tryAcquire(properties.connectTimeoutMs(command), TimeUnit.MILLISECONDS);
+    }
+
+    public void release(ProviderCommand command) {
+        Semaphore semaphore = permits.get(command);
+        if (semaphore != null) {
+            semaphore.release();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        permits.forEach((command, semaphore) -> {
+            int limit = properties.maxConcurrentCalls(command);
+            Map<String, Object> usage = new LinkedHashMap<>();
+            usage.put("limit", limit);
+            usage.put("active", limit - semaphore.availablePermits());
+            usage.put("waiting", semaphore.getQueueLength());
+            stats.put(command.name().toLowerCase(), usage);
+        });
+        return stats;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.smsservice.provider;
+
+import java.time.LocalDateTime;
+
+/**
+ * Number allocated by a {@code request} or {@code ltr_rent} command.
+ */
+public record ProviderNumber(String id, String mdn, LocalDateTime expires) {
+}
@@ -0,0 +1,55 @@
+package com.example.smsservice.provider;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "external.api")
+public class ProviderProperties {
+    private String url;
+    private String user;
+    private String key;
+    private String longTermServicesUrl;
+    private String shortTermServicesUrl;
+
+    private int maxConnections = 50;
+    private int maxConnectionsPerRoute = 50;
+    private long connectionTimeToLiveMs = 60_000;
+    private long idleEvictMs = 30_000;
+    // TCP connect timeout of new pooled connections, which later serve every command
+    private int connectTimeoutMs = 3_000;
+
+    // concurrent calls allowed per command, 0 disables the limit; see ProviderConcurrencyLimiter
+    private int maxConcurrentCalls = 20;
+    private Map<ProviderCommand, Integer> concurrentCalls = new EnumMap<>(ProviderCommand.class);
+
+    // per-command overrides of the defaults declared on ProviderCommand; connect-ms bounds the wait for a
+    // concurrency permit and a pooled connection
+    private Map<ProviderCommand, Timeouts> timeouts = new EnumMap<>(ProviderCommand.class);
+
+    public int maxConcurrentCalls(ProviderCommand command) {
+        Integer override = concurrentCalls.get(command);
+        return override != null ? override : maxConcurrentCalls;
+    }
+
+    public int connectTimeoutMs(ProviderCommand command) {
+        Timeouts override = timeouts.get(command);
+        return override != null && override.getConnectMs() != null ? override.getConnectMs() : command.defaultConnectTimeoutMs();
+    }
+
+    public int readTimeoutMs(ProviderCommand command) {
+        Timeouts override = timeouts.get(command);
+        return override != null && override.getReadMs() != null ? override.getReadMs() : command.defaultReadTimeoutMs();
+    }
+
+    @Data
+    public static class Timeouts {
+        private Integer connectMs;
+        private Integer readMs;
+    }
+}
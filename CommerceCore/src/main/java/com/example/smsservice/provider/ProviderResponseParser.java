@@ -0,0 +1,156 @@
+package com.example.smsservice.provider;
+
+import com.example.smsservice.model.ApiException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming parser for the provider's {@code {"status": ..., "message": ...}} envelope, where
+ * {@code message} is an error text, a single object or an array of objects.
+ */
+public final class ProviderResponseParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final DateTimeFormatter EXPIRES_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String NO_MESSAGES = "No messages";
+
+    private ProviderResponseParser() {
+    }
+
+    public static ProviderNumber parseNumber(InputStream body, ProviderCommand command) throws IOException {
+        Envelope envelope = parseEnvelope(body);
+        envelope.requireOk(command);
+        if (envelope.items.isEmpty()) {
+            throw new ApiException("API error for command '" + command.cmd() + "': No numbers available");
+        }
+
+        Map<String, String> fields = envelope.items.get(0);
+        LocalDateTime expires = parseExpires(fields.get("expires"));
+        if (expires == null) {
+            expires = parseTimeToExpiry(fields.get("till_expiration"));
+        }
+        return new ProviderNumber(fields.getOrDefault("id", "N/A"), fields.get("mdn"), expires);
+    }
+
+    // the number is already rented at this point, so an odd expiry must not fail the purchase; null means
+    // the caller applies its default lifetime
+    private static LocalDateTime parseExpires(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value, EXPIRES_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static LocalDateTime parseTimeToExpiry(String seconds) {
+        if (seconds == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.now().plusSeconds(Long.parseLong(seconds.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static List<ProviderSms> parseSms(InputStream body) throws IOException {
+        Envelope envelope = parseEnvelope(body);
+        if (!envelope.isOk() && NO_MESSAGES.equals(envelope.text)) {
+            return Collections.emptyList();
+        }
+        envelope.requireOk(ProviderCommand.READ_SMS);
+
+        List<ProviderSms> messages = new ArrayList<>(envelope.items.size());
+        for (Map<String, String> fields : envelope.items) {
+            messages.add(new ProviderSms(fields.get("date_time"), fields.get("from"), fields.get("reply")));
+        }
+        return messages;
+    }
+
+    public static void parseAck(InputStream body, ProviderCommand command) throws IOException {
+        parseEnvelope(body).requireOk(command);
+    }
+
+    private static Envelope parseEnvelope(InputStream body) throws IOException {
+        Envelope envelope = new Envelope();
+        if (body == null) {
+            envelope.text = "No response body";
+            return envelope;
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                envelope.text = "Malformed response body";
+                return envelope;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("status".equals(field)) {
+                    envelope.status = parser.getValueAsString();
+                } else if ("message".equals(field)) {
+                    if (value == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            envelope.items.add(readFlatObject(parser));
+                        }
+                    } else if (value == JsonToken.START_OBJECT) {
+                        envelope.items.add(readFlatObject(parser));
+                    } else {
+                        envelope.text = parser.getValueAsString();
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return envelope;
+    }
+
+    // scalar fields only, nested structures are skipped
+    private static Map<String, String> readFlatObject(JsonParser parser) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value.isScalarValue()) {
+                if (value != JsonToken.VALUE_NULL) {
+                    fields.put(field, parser.getValueAsString());
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return fields;
+    }
+
+    private static final class Envelope {
+        private String status;
+        private String text;
+        private final List<Map<String, String>> items = new ArrayList<>();
+
+        boolean isOk() {
+            return "ok".equalsIgnoreCase(status);
+        }
+
+        void requireOk(ProviderCommand command) {
+            if (!isOk()) {
+                throw new ApiException("API error for command '" + command.cmd() + "': "
+                        + (text != null ? text : "Unknown error"));
+            }
+        }
+    }
+}
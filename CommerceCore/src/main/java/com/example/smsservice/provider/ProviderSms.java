@@ -0,0 +1,7 @@
+package com.example.smsservice.provider;
+
+/**
+ * One entry of a {@code read_sms} response.
+ */
+public record ProviderSms(String dateTime, String from, String reply) {
+}
@@ -0,0 +1,33 @@
+package com.example.smsservice.repository;
+
+import com.example.smsservice.model.BalanceLedgerEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface BalanceLedgerRepository extends JpaRepository<BalanceLedgerEntry, Long> {
+
+    List<BalanceLedgerEntry> findByUserIdOrderByIdDesc(Long userId, Pageable pageable);
+
+    // a locking read, unlike a derived exists query, also sees entries committed after this transaction began
+    @Query(value = "SELECT id FROM balance_ledger WHERE user_id = :userId ORDER BY id LIMIT 1 FOR UPDATE",
+            nativeQuery = true)
+    Optional<Long> lockFirstEntryId(@Param("userId") Long userId);
+
+    @Query("SELECT u.id AS userId, u.username AS username, u.balance AS balance, SUM(e.amount) AS ledgerBalance " +
+            "FROM User u JOIN BalanceLedgerEntry e ON e.userId = u.id " +
+            "GROUP BY u.id, u.username, u.balance " +
+            "HAVING ABS(u.balance - SUM(e.amount)) > :tolerance")
+    List<LedgerBalanceView> findMismatchedBalances(@Param("tolerance") double tolerance);
+
+    interface LedgerBalanceView {
+        Long getUserId();
+        String getUsername();
+        double getBalance();
+        Double getLedgerBalance();
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.smsservice.repository;
+
+import com.example.smsservice.model.EmailState;
+import com.example.smsservice.model.OutboundEmail;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface OutboundEmailRepository extends JpaRepository<OutboundEmail, Long> {
+
+    @Query("SELECT e FROM OutboundEmail e WHERE e.state = com.example.smsservice.model.EmailState.PENDING " +
+            "AND e.nextAttemptAt <= :now ORDER BY e.nextAttemptAt ASC, e.id ASC")
+    List<OutboundEmail> findDue(@Param("now") Instant now, Pageable pageable);
+
+    long countByState(EmailState state);
+
+    @Query("SELECT MIN(e.createdAt) FROM OutboundEmail e WHERE e.state = com.example.smsservice.model.EmailState.PENDING")
+    Instant findOldestPendingCreatedAt();
+
+    @Modifying
+    @Query("UPDATE OutboundEmail e SET e.state = com.example.smsservice.model.EmailState.SENT, e.sentAt = :sentAt, " +
+            "e.attempts = e.attempts + 1 WHERE e.id IN :ids")
+    int markSent(@Param("ids") Collection<Long> ids, @Param("sentAt") Instant sentAt);
+
+    @Modifying
+    @Query("UPDATE OutboundEmail e SET e.state = :state, e.attempts = e.attempts + 1, " +
+            "e.nextAttemptAt = :nextAttemptAt, e.lastError = :error WHERE e.id = :id")
+    int markFailed(@Param("id") Long id, @Param("state") EmailState state,
+                   @Param("nextAttemptAt") Instant nextAttemptAt, @Param("error") String error);
+
+    @Query("SELECT e.id FROM OutboundEmail e WHERE e.state = :state AND e.createdAt < :createdBefore ORDER BY e.id ASC")
+    List<Long> findIdsByStateCreatedBefore(@Param("state") EmailState state,
+                                           @Param("createdBefore") Instant createdBefore,
+                                           Pageable pageable);
+}
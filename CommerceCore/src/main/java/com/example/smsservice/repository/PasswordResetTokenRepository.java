@@ -3,13 +3,15 @@ package com.example.smsservice.repository;
 import com.example.smsservice.model.PasswordResetToken;
 import com.example.smsservice.model.User;
 import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.util.Date;
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -20,5 +22,8 @@ public interface PasswordResetTokenRepository extends JpaRepository<PasswordRese
     @Modifying
     @Transactional
     @Query("DELETE FROM PasswordResetToken t WHERE t.expiryDate < :now")
-    void deleteAllExpiredTokens(@Param("now") Date now);
+    void deleteAllExpiredTokens(@Param("now") Instant now);
+
+    @Query("SELECT t.id FROM PasswordResetToken t WHERE t.expiryDate < :now ORDER BY t.id ASC")
+    List<Long> findExpiredIds(@Param("now") Instant now, Pageable pageable);
 }
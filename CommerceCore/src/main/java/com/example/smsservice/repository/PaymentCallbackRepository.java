@@ -0,0 +1,44 @@
+package com.example.smsservice.repository;
+
+import com.example.smsservice.model.CallbackState;
+import com.example.smsservice.model.PaymentCallback;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface PaymentCallbackRepository extends JpaRepository<PaymentCallback, Long> {
+
+    // NEW callbacks whose retry is due, skipping orders with an earlier callback still waiting for its retry
+    @Query("SELECT c FROM PaymentCallback c WHERE c.state = com.example.smsservice.model.CallbackState.NEW " +
+            "AND c.nextAttemptAt <= :now AND c.id > :afterId AND NOT EXISTS (SELECT p.id FROM PaymentCallback p " +
+            "WHERE p.orderId = c.orderId AND p.state = com.example.smsservice.model.CallbackState.NEW " +
+            "AND p.id < c.id AND p.nextAttemptAt > :now) ORDER BY c.id ASC")
+    List<PaymentCallback> findDue(@Param("now") Instant now, @Param("afterId") Long afterId, Pageable pageable);
+
+    long countByState(CallbackState state);
+
+    @Query("SELECT MIN(c.receivedAt) FROM PaymentCallback c WHERE c.state = :state")
+    Instant findOldestReceivedAt(@Param("state") CallbackState state);
+
+    @Query("SELECT c.id FROM PaymentCallback c WHERE c.state = :state AND c.receivedAt < :receivedBefore " +
+            "ORDER BY c.id ASC")
+    List<Long> findIdsByStateReceivedBefore(@Param("state") CallbackState state,
+                                            @Param("receivedBefore") Instant receivedBefore,
+                                            Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE PaymentCallback c SET c.state = com.example.smsservice.model.CallbackState.PROCESSED, " +
+            "c.processedAt = :processedAt WHERE c.id = :id")
+    int markProcessed(@Param("id") Long id, @Param("processedAt") Instant processedAt);
+
+    @Modifying
+    @Query("UPDATE PaymentCallback c SET c.attempts = c.attempts + 1, c.state = :state, " +
+            "c.nextAttemptAt = :nextAttemptAt, c.lastError = :error WHERE c.id = :id")
+    int markAttemptFailed(@Param("id") Long id, @Param("state") CallbackState state,
+                          @Param("nextAttemptAt") Instant nextAttemptAt, @Param("error") String error);
+}
@@ -1,10 +1,17 @@
 package com.example.smsservice.repository;
 
+import com.example.smsservice.dto.TransactionDTO;
 import com.example.smsservice.model.PaymentTransaction;
 import com.example.smsservice.model.TransactionStatus;
 import com.example.smsservice.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,4 +19,81 @@ public interface PaymentTransactionRepository extends JpaRepository<PaymentTrans
     PaymentTransaction findByTransactionId(String transactionId);
     Optional<PaymentTransaction> findByOrderId(String orderId);
     List<PaymentTransaction> findAllByUser(User user);
+
+    // only the first notification that moves a payment out of PENDING wins
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE PaymentTransaction t SET t.status = :status, " +
+            "t.transactionId = COALESCE(:transactionId, t.transactionId) " +
+            "WHERE t.orderId = :orderId AND t.status = com.example.smsservice.model.TransactionStatus.PENDING")
+    int settlePending(@Param("orderId") String orderId,
+                      @Param("status") TransactionStatus status,
+                      @Param("transactionId") String transactionId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE PaymentTransaction t SET t.transactionId = :transactionId " +
+            "WHERE t.orderId = :orderId AND t.status = com.example.smsservice.model.TransactionStatus.PENDING " +
+            "AND t.transactionId IS NULL")
+    int attachTransactionId(@Param("orderId") String orderId, @Param("transactionId") String transactionId);
+
+    @Query("SELECT t.user.username FROM PaymentTransaction t WHERE t.orderId = :orderId")
+    Optional<String> findUsernameByOrderId(@Param("orderId") String orderId);
+
+    /**
+     * PENDING transactions created before {@code createdBefore} that have a NOWPayments payment or invoice id,
+     * oldest first, after the keyset position (afterCreatedAt, afterId). Served by idx_status_created.
+     */
+    @Query("SELECT t.id AS id, t.orderId AS orderId, t.transactionId AS transactionId, t.invoiceId AS invoiceId, " +
+            "t.createdAt AS createdAt FROM PaymentTransaction t " +
+            "WHERE t.status = com.example.smsservice.model.TransactionStatus.PENDING " +
+            "AND t.createdAt < :createdBefore AND (t.transactionId IS NOT NULL OR t.invoiceId IS NOT NULL) " +
+            "AND (t.createdAt > :afterCreatedAt OR (t.createdAt = :afterCreatedAt AND t.id > :afterId)) " +
+            "ORDER BY t.createdAt ASC, t.id ASC")
+    List<StalePaymentView> findStalePending(@Param("createdBefore") LocalDateTime createdBefore,
+                                            @Param("afterCreatedAt") LocalDateTime afterCreatedAt,
+                                            @Param("afterId") Long afterId,
+                                            Pageable pageable);
+
+    // keyset pages, newest first: rows strictly after (afterCreatedAt, afterId) in (created_at DESC, id DESC) order
+    @Query("SELECT new com.example.smsservice.dto.TransactionDTO(t.transactionId, t.amount, t.status, t.createdAt, u.username, t.id) " +
+            "FROM PaymentTransaction t JOIN t.user u " +
+            "WHERE t.status IN :statuses " +
+            "AND (:from IS NULL OR t.createdAt >= :from) AND (:to IS NULL OR t.createdAt < :to) " +
+            "AND (:afterCreatedAt IS NULL OR t.createdAt < :afterCreatedAt " +
+            "     OR (t.createdAt = :afterCreatedAt AND t.id < :afterId)) " +
+            "ORDER BY t.createdAt DESC, t.id DESC")
+    List<TransactionDTO> findPage(@Param("statuses") Collection<TransactionStatus> statuses,
+                                  @Param("from") LocalDateTime from,
+                                  @Param("to") LocalDateTime to,
+                                  @Param("afterCreatedAt") LocalDateTime afterCreatedAt,
+                                  @Param("afterId") Long afterId,
+                                  Pageable pageable);
+
+    @Query("SELECT new com.example.smsservice.dto.TransactionDTO(t.transactionId, t.amount, t.status, t.createdAt, u.username, t.id) " +
+            "FROM PaymentTransaction t JOIN t.user u " +
+            "WHERE t.user.id = :userId AND t.status IN :statuses " +
+            "AND (:from IS NULL OR t.createdAt >= :from) AND (:to IS NULL OR t.createdAt < :to) " +
+            "AND (:afterCreatedAt IS NULL OR t.createdAt < :afterCreatedAt " +
+            "     OR (t.createdAt = :afterCreatedAt AND t.id < :afterId)) " +
+            "ORDER BY t.createdAt DESC, t.id DESC")
+    List<TransactionDTO> findPageByUserId(@Param("userId") Long userId,
+                                          @Param("statuses") Collection<TransactionStatus> statuses,
+                                          @Param("from") LocalDateTime from,
+                                          @Param("to") LocalDateTime to,
+                                          @Param("afterCreatedAt") LocalDateTime afterCreatedAt,
+                                          @Param("afterId") Long afterId,
+                                          Pageable pageable);
+
+    @Query("SELECT t.id FROM PaymentTransaction t WHERE t.status = :status AND t.createdAt < :createdBefore " +
+            "ORDER BY t.createdAt ASC, t.id ASC")
+    List<Long> findIdsByStatusCreatedBefore(@Param("status") TransactionStatus status,
+                                            @Param("createdBefore") LocalDateTime createdBefore,
+                                            Pageable pageable);
+
+    interface StalePaymentView {
+        Long getId();
+        String getOrderId();
+        String getTransactionId();
+        String getInvoiceId();
+        LocalDateTime getCreatedAt();
+    }
 }
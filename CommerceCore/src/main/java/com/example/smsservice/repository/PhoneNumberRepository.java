@@ -2,9 +2,15 @@ package com.example.smsservice.repository;
 
 import com.example.smsservice.model.PhoneNumber;
 import com.example.smsservice.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,4 +22,91 @@ public interface PhoneNumberRepository extends JpaRepository<PhoneNumber, Long>
     List<PhoneNumber> findByUser(User owner);
     List<PhoneNumber> findByUserId(Long userId);
     Optional<PhoneNumber> findByPhoneNumber(String phoneNumber);
+
+    @Query("SELECT p.id AS id, p.phoneNumber AS phoneNumber, u.username AS username FROM PhoneNumber p " +
+            "LEFT JOIN p.user u WHERE p.status IN :statuses AND p.id > :afterId ORDER BY p.id ASC")
+    List<PolledNumberView> findPolledNumbers(@Param("statuses") Collection<String> statuses,
+                                             @Param("afterId") long afterId,
+                                             Pageable pageable);
+
+    /**
+     * Numbers in one of {@code statuses} that expire before {@code until}, soonest first. The rows are
+     * locked, so a concurrent sweep or return waits and then no longer sees them once they are marked expired.
+     * Native because Hibernate does not reliably add {@code FOR UPDATE} to a locked projection query.
+     */
+    @Query(value = "SELECT id, phone_number AS phoneNumber, service_name AS serviceName, " +
+            "external_id AS externalId, rental_type AS rentalType, expires FROM phone_numbers " +
+            "WHERE status IN (:statuses) AND expires <= :until ORDER BY expires, id LIMIT :limit FOR UPDATE",
+            nativeQuery = true)
+    List<ExpiringNumberView> lockExpiring(@Param("statuses") Collection<String> statuses,
+                                          @Param("until") LocalDateTime until,
+                                          @Param("limit") int limit);
+
+    @Query(value = "SELECT id, phone_number AS phoneNumber, service_name AS serviceName, " +
+            "external_id AS externalId, rental_type AS rentalType, expires FROM phone_numbers " +
+            "WHERE id = :id AND status IN (:statuses) AND expires <= :until FOR UPDATE",
+            nativeQuery = true)
+    Optional<ExpiringNumberView> lockExpiringById(@Param("id") Long id,
+                                                  @Param("statuses") Collection<String> statuses,
+                                                  @Param("until") LocalDateTime until);
+
+    // unlocked read used to fill the in-memory timer with numbers expiring soon
+    @Query("SELECT p.id AS id, p.phoneNumber AS phoneNumber, p.serviceName AS serviceName, " +
+            "p.externalId AS externalId, p.rentalType AS rentalType, p.expires AS expires FROM PhoneNumber p " +
+            "WHERE p.status IN :statuses AND p.expires <= :until ORDER BY p.expires ASC, p.id ASC")
+    List<ExpiringNumberView> findExpiring(@Param("statuses") Collection<String> statuses,
+                                          @Param("until") LocalDateTime until,
+                                          Pageable pageable);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE PhoneNumber p SET p.status = :status WHERE p.id IN :ids")
+    int updateStatus(@Param("ids") Collection<Long> ids, @Param("status") String status);
+
+    // one-off for numbers bought before rental_type was stored: they were priced without a markup, so the old
+    // rule (under 5 is a short-term activation) still tells them apart
+    @Modifying
+    @Query("UPDATE PhoneNumber p SET p.rentalType = CASE WHEN p.price < 5 THEN :shortTerm ELSE :longTerm END " +
+            "WHERE p.rentalType IS NULL")
+    int backfillRentalTypes(@Param("longTerm") String longTerm, @Param("shortTerm") String shortTerm);
+
+    @Query("SELECT p.id FROM PhoneNumber p WHERE p.phoneNumber = :phoneNumber")
+    Optional<Long> findIdByPhoneNumber(@Param("phoneNumber") String phoneNumber);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE PhoneNumber p SET p.status = :to " +
+            "WHERE p.id = :id AND (p.status = :from OR (:from IS NULL AND p.status IS NULL))")
+    int compareAndSetStatus(@Param("id") Long id, @Param("from") String from, @Param("to") String to);
+
+    @Query("SELECT p.id AS id, p.phoneNumber AS phoneNumber, p.serviceName AS serviceName, " +
+            "p.price AS price, p.status AS status FROM PhoneNumber p WHERE p.user.id = :userId ORDER BY p.id ASC")
+    List<PhoneNumberView> findViewsByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT p.id AS id, p.phoneNumber AS phoneNumber, p.serviceName AS serviceName, " +
+            "p.price AS price, p.status AS status FROM PhoneNumber p " +
+            "WHERE p.serviceName = :serviceName AND p.status IN :statuses ORDER BY p.id ASC")
+    List<PhoneNumberView> findViewsByServiceNameAndStatusIn(@Param("serviceName") String serviceName,
+                                                            @Param("statuses") Collection<String> statuses);
+
+    interface PhoneNumberView {
+        Long getId();
+        String getPhoneNumber();
+        String getServiceName();
+        Double getPrice();
+        String getStatus();
+    }
+
+    interface PolledNumberView {
+        Long getId();
+        String getPhoneNumber();
+        String getUsername();
+    }
+
+    interface ExpiringNumberView {
+        Long getId();
+        String getPhoneNumber();
+        String getServiceName();
+        String getExternalId();
+        String getRentalType();
+        LocalDateTime getExpires();
+    }
 }
@@ -0,0 +1,31 @@
+package com.example.smsservice.repository;
+
+import com.example.smsservice.model.OrderStatus;
+import com.example.smsservice.model.PurchaseOrder;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface PurchaseOrderRepository extends JpaRepository<PurchaseOrder, Long> {
+
+    List<PurchaseOrder> findByStatusAndUpdatedAtBeforeOrderByIdAsc(OrderStatus status, Instant before, Pageable pageable);
+
+    // the number the provider rented for a purchase, stored before the purchase is confirmed
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE PurchaseOrder o SET o.phoneNumber = :phoneNumber, o.externalId = :externalId, o.updatedAt = :now " +
+            "WHERE o.id = :id AND o.status = com.example.smsservice.model.OrderStatus.PENDING")
+    int recordAllocation(@Param("id") Long id, @Param("phoneNumber") String phoneNumber,
+                         @Param("externalId") String externalId, @Param("now") Instant now);
+
+    // moves a PENDING order to its final status; 0 means someone else already resolved it
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE PurchaseOrder o SET o.status = :status, o.failureReason = :reason, o.updatedAt = :now " +
+            "WHERE o.id = :id AND o.status = com.example.smsservice.model.OrderStatus.PENDING")
+    int resolve(@Param("id") Long id, @Param("status") OrderStatus status, @Param("reason") String reason,
+                @Param("now") Instant now);
+}
@@ -1,14 +1,45 @@
 package com.example.smsservice.repository;
 
+import com.example.smsservice.dto.SMSMessageDTO;
+import com.example.smsservice.dto.SMSNotificationDTO;
 import com.example.smsservice.model.PhoneNumber;
 import com.example.smsservice.model.SMSMessage;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface SMSMessageRepository extends JpaRepository<SMSMessage, Long> {
     List<SMSMessage> findByPhoneNumber(PhoneNumber phoneNumber);
     List<SMSMessage> findByPhoneNumber_PhoneNumber(String phoneNumber);
+
+    @Query("SELECT new com.example.smsservice.dto.SMSMessageDTO(m.id, m.dateTime, m.sender, m.message) " +
+            "FROM SMSMessage m WHERE m.phoneNumber.id = :phoneNumberId AND m.id > :sinceId ORDER BY m.id ASC")
+    List<SMSMessageDTO> findMessagesSince(@Param("phoneNumberId") Long phoneNumberId,
+                                          @Param("sinceId") long sinceId,
+                                          Pageable pageable);
+
+    @Query("SELECT new com.example.smsservice.dto.SMSNotificationDTO(m.id, p.phoneNumber, m.dateTime, m.sender, m.message) " +
+            "FROM SMSMessage m JOIN m.phoneNumber p JOIN p.user u " +
+            "WHERE u.username = :username AND m.id > :sinceId ORDER BY m.id ASC")
+    List<SMSNotificationDTO> findNotificationsForUserSince(@Param("username") String username,
+                                                           @Param("sinceId") long sinceId,
+                                                           Pageable pageable);
+
+    @Query("SELECT m.fingerprint FROM SMSMessage m WHERE m.phoneNumber.id = :phoneNumberId")
+    List<String> findFingerprints(@Param("phoneNumberId") Long phoneNumberId);
+
+    // messages of numbers that are no longer rented (expired, released, ...) received before the cutoff
+    @Query("SELECT m.id FROM SMSMessage m JOIN m.phoneNumber p " +
+            "WHERE m.receivedAt < :receivedBefore AND (p.status IS NULL OR p.status NOT IN :activeStatuses) " +
+            "ORDER BY m.id ASC")
+    List<Long> findInactiveIdsReceivedBefore(@Param("receivedBefore") Instant receivedBefore,
+                                             @Param("activeStatuses") Collection<String> activeStatuses,
+                                             Pageable pageable);
 }
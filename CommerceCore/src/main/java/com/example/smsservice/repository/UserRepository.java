@@ -1,17 +1,86 @@
 package com.example.smsservice.repository;
 
+import com.example.smsservice.dto.UserSummaryDTO;
 import com.example.smsservice.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
     Optional<User> findByEmail(String email);
 
-    default void updateBalance(User user, double newBalance) {
-        user.setBalance(newBalance);
-        save(user);
+    @Query("SELECT u.id AS id, u.username AS username, u.tokenVersion AS tokenVersion FROM User u")
+    List<TokenVersionView> findAllTokenVersions();
+
+    @Query("SELECT u.id AS id, u.username AS username, u.tokenVersion AS tokenVersion FROM User u " +
+            "WHERE u.tokenVersionChangedAt >= :since")
+    List<TokenVersionView> findTokenVersionsChangedSince(@Param("since") Instant since);
+
+    @Query("SELECT u.id AS id, u.username AS username, u.tokenVersion AS tokenVersion FROM User u " +
+            "WHERE u.username = :username")
+    Optional<TokenVersionView> findTokenVersionByUsername(@Param("username") String username);
+
+    interface TokenVersionView {
+        Long getId();
+        String getUsername();
+        int getTokenVersion();
     }
 
+    @Query("SELECT u.id FROM User u WHERE u.username = :username")
+    Optional<Long> findIdByUsername(@Param("username") String username);
+
+    @Query("SELECT u.balance FROM User u WHERE u.id = :id")
+    Optional<Double> findBalanceById(@Param("id") Long id);
+
+    @Query("SELECT u.balance FROM User u WHERE u.username = :username")
+    Optional<Double> findBalanceByUsername(@Param("username") String username);
+
+    @Query("SELECT new com.example.smsservice.dto.UserSummaryDTO(u.id, u.username, u.email, u.role, u.balance) " +
+            "FROM User u WHERE u.id > :afterId ORDER BY u.id ASC")
+    List<UserSummaryDTO> findSummariesAfter(@Param("afterId") long afterId, Pageable pageable);
+
+    @Query("SELECT u.id FROM User u WHERE (:username IS NULL OR u.username = :username) AND u.id > :afterId ORDER BY u.id ASC")
+    List<Long> findIdsAfter(@Param("username") String username, @Param("afterId") long afterId, Pageable pageable);
+
+    // one row per (user, number); users without numbers come back once with null number columns
+    @Query("SELECT u.id AS userId, u.username AS username, u.email AS email, u.balance AS balance, " +
+            "p.phoneNumber AS phoneNumber, p.serviceName AS serviceName, p.price AS price, p.status AS status " +
+            "FROM User u LEFT JOIN u.phoneNumbers p WHERE u.id IN :ids ORDER BY u.id ASC, p.id ASC")
+    List<UserNumberRow> findUsersWithNumbers(@Param("ids") Collection<Long> ids);
+
+    interface UserNumberRow {
+        Long getUserId();
+        String getUsername();
+        String getEmail();
+        double getBalance();
+        String getPhoneNumber();
+        String getServiceName();
+        Double getPrice();
+        String getStatus();
+    }
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE User u SET u.balance = u.balance + :amount WHERE u.id = :id")
+    int creditBalance(@Param("id") Long id, @Param("amount") double amount);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE User u SET u.balance = u.balance - :amount WHERE u.id = :id AND u.balance >= :amount")
+    int debitBalance(@Param("id") Long id, @Param("amount") double amount);
+
+    // locking read: waits for concurrent balance changes and returns the latest committed balance
+    @Query(value = "SELECT balance FROM users WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Optional<Double> lockBalanceById(@Param("id") Long id);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE User u SET u.balance = :newBalance WHERE u.id = :id")
+    int setBalance(@Param("id") Long id, @Param("newBalance") double newBalance);
+
 }
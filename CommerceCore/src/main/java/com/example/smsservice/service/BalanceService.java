@@ -0,0 +1,192 @@
+package com.example.smsservice.service;
+
+import com.example.smsservice.model.BalanceEntryType;
+import com.example.smsservice.model.BalanceLedgerEntry;
+import com.example.smsservice.model.DatabaseException;
+import com.example.smsservice.model.InsufficientBalanceException;
+import com.example.smsservice.repository.BalanceLedgerRepository;
+import com.example.smsservice.repository.BalanceLedgerRepository.LedgerBalanceView;
+import com.example.smsservice.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * All balance changes go through here. Each change locks the user row with {@code SELECT ... FOR UPDATE},
+ * updates {@code users.balance} in place and writes an entry to {@code balance_ledger}, all in one transaction;
+ * the User entity is never loaded, so concurrent purchases, refunds and payment callbacks cannot overwrite
+ * each other.
+ */
+@Service
+public class BalanceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BalanceService.class);
+    private static final double RECONCILE_TOLERANCE = 0.000001;
+
+    private final UserRepository userRepository;
+    private final BalanceLedgerRepository ledgerRepository;
+    private final MeterRegistry meterRegistry;
+
+    private volatile Map<String, Object> lastReconciliation = Map.of();
+
+    public BalanceService(UserRepository userRepository, BalanceLedgerRepository ledgerRepository,
+                          MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.ledgerRepository = ledgerRepository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public double getBalance(String username) {
+        return userRepository.findBalanceByUsername(username)
+                .orElseThrow(() -> new DatabaseException("User not found"));
+    }
+
+    /**
+     * Adds {@code amount} and returns the new balance.
+     */
+    @Transactional
+    public double credit(String username, double amount, BalanceEntryType type, String reference) {
+        return timed("credit", type, () -> {
+            requirePositive(amount);
+            Long userId = userId(username);
+            openLedger(userId, lockBalance(userId));
+            userRepository.creditBalance(userId, amount);
+            return record(userId, type, amount, reference);
+        });
+    }
+
+    /**
+     * Subtracts {@code amount} if the balance covers it and returns the new balance.
+     */
+    @Transactional
+    public double debit(String username, double amount, BalanceEntryType type, String reference) {
+        return timed("debit", type, () -> {
+            requirePositive(amount);
+            Long userId = userId(username);
+            openLedger(userId, lockBalance(userId));
+            if (userRepository.debitBalance(userId, amount) == 0) {
+                logger.warn("Insufficient balance. User: {}, required: {}", username, amount);
+                throw new InsufficientBalanceException("Insufficient balance for user: " + username);
+            }
+            return record(userId, type, -amount, reference);
+        });
+    }
+
+    /**
+     * Sets an absolute balance (admin correction) and records the difference to the locked, current balance
+     * as an adjustment.
+     */
+    @Transactional
+    public double setBalance(String username, double newBalance, String reference) {
+        return timed("set", BalanceEntryType.ADJUSTMENT, () -> {
+            if (newBalance < 0) {
+                throw new IllegalArgumentException("Balance cannot be negative");
+            }
+            Long userId = userId(username);
+            double current = lockBalance(userId);
+            if (newBalance != current) {
+                openLedger(userId, current);
+                userRepository.setBalance(userId, newBalance);
+                ledgerRepository.save(new BalanceLedgerEntry(userId, BalanceEntryType.ADJUSTMENT,
+                        newBalance - current, newBalance, reference));
+            }
+            return newBalance;
+        });
+    }
+
+    /**
+     * Reports users whose balance no longer matches the sum of their ledger entries.
+     */
+    @Scheduled(fixedDelayString = "${balance.reconcile-interval-ms:3600000}", initialDelayString = "${balance.reconcile-initial-delay-ms:60000}")
+    @Transactional
+    public void reconcile() {
+        long started = System.nanoTime();
+
+        List<LedgerBalanceView> mismatched = ledgerRepository.findMismatchedBalances(RECONCILE_TOLERANCE);
+        for (LedgerBalanceView view : mismatched) {
+            logger.error("Balance ledger mismatch for user {}: balance={}, ledger={}",
+                    view.getUsername(), view.getBalance(), view.getLedgerBalance());
+        }
+
+        long durationMs = (System.nanoTime() - started) / 1_000_000;
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("ranAt", Instant.now().toString());
+        summary.put("durationMs", durationMs);
+        summary.put("mismatchedAccounts", mismatched.size());
+        lastReconciliation = summary;
+        logger.info("Balance reconciliation finished in {} ms: {} mismatches", durationMs, mismatched.size());
+    }
+
+    public Map<String, Object> lastReconciliation() {
+        return lastReconciliation;
+    }
+
+    private double timed(String operation, BalanceEntryType type, Supplier<Double> change) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            double balance = change.get();
+            outcome = "success";
+            return balance;
+        } catch (InsufficientBalanceException e) {
+            outcome = "insufficient_balance";
+            throw e;
+        } catch (IllegalArgumentException e) {
+            outcome = "rejected";
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("balance.operations")
+                    .description("Balance mutations, including the ledger write")
+                    .tag("operation", operation)
+                    .tag("type", type.name().toLowerCase())
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    private double record(Long userId, BalanceEntryType type, double delta, String reference) {
+        // the row is locked since lockBalance, so this read sees exactly our change
+        double balance = userRepository.findBalanceById(userId)
+                .orElseThrow(() -> new DatabaseException("User not found"));
+        ledgerRepository.save(new BalanceLedgerEntry(userId, type, delta, balance, reference));
+        return balance;
+    }
+
+    private double lockBalance(Long userId) {
+        return userRepository.lockBalanceById(userId)
+                .orElseThrow(() -> new DatabaseException("User not found"));
+    }
+
+    /**
+     * Writes the OPENING entry for a balance that predates the ledger, right before the user's first
+     * ledger entry. {@code previousBalance} must come from {@link #lockBalance}: the user row then stays
+     * locked until commit, so two concurrent changes cannot both open the ledger.
+     */
+    private void openLedger(Long userId, double previousBalance) {
+        if (previousBalance != 0 && ledgerRepository.lockFirstEntryId(userId).isEmpty()) {
+            ledgerRepository.save(new BalanceLedgerEntry(userId, BalanceEntryType.OPENING,
+                    previousBalance, previousBalance, null));
+        }
+    }
+
+    private Long userId(String username) {
+        return userRepository.findIdByUsername(username)
+                .orElseThrow(() -> new DatabaseException("User not found"));
+    }
+
+    private static void requirePositive(double amount) {
+        if (!(amount > 0)) {
+            throw new IllegalArgumentException("Amount must be positive");
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.smsservice.service;
+
+import com.example.smsservice.model.Role;
+import com.example.smsservice.model.User;
+
+/**
+ * Immutable copy of the fields of a {@link User} that authentication needs, as held by {@link UserCache}.
+ * Balance and phone numbers are deliberately left out: they change on every purchase and are always read
+ * from the database.
+ */
+public record CachedUser(Long id, String username, String passwordHash, Role role, int tokenVersion) {
+
+    static CachedUser of(User user) {
+        return new CachedUser(user.getId(), user.getUsername(), user.getPassword(), user.getRole(),
+                user.getTokenVersion());
+    }
+}
@@ -1,6 +1,5 @@
 package com.example.smsservice.service;
 
-import com.example.smsservice.model.User;
 import com.example.smsservice.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,33 +12,35 @@ import org.springframework.stereotype.Service;
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UserRepository userRepository;
+    private final UserCache userCache;
     private final Logger logger = LoggerFactory.getLogger(CustomUserDetailsService.class);
 
-    public CustomUserDetailsService(UserRepository userRepository) {
+    public CustomUserDetailsService(UserRepository userRepository, UserCache userCache) {
         this.userRepository = userRepository;
+        this.userCache = userCache;
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         logger.debug("Attempting to load user by username: {}", username);
 
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> {
-                    logger.error("User not found in database: {}", username);
-                    return new UsernameNotFoundException("User not found in database: " + username);
-                });
+        CachedUser user = userCache.get(username, key -> userRepository.findByUsername(key).orElse(null));
+        if (user == null) {
+            logger.error("User not found in database: {}", username);
+            throw new UsernameNotFoundException("User not found in database: " + username);
+        }
 
-        String roleName = user.getRole().name();
+        String roleName = user.role().name();
         if (!roleName.startsWith("ROLE_")) {
             roleName = "ROLE_" + roleName;
         }
-        logger.debug("Loaded user: {}", user.getUsername());
-        logger.debug("Role: {}", user.getRole().name());
+        logger.debug("Loaded user: {}", user.username());
+        logger.debug("Role: {}", user.role().name());
         logger.debug("Loaded user role: {}", roleName);
 
         return org.springframework.security.core.userdetails.User.builder()
-                .username(user.getUsername())
-                .password(user.getPassword())
+                .username(user.username())
+                .password(user.passwordHash())
                 .roles(roleName.replace("ROLE_", ""))
                 .build();
     }
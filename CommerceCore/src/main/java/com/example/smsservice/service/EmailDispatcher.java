@@ -0,0 +1,173 @@
+package com.example.smsservice.service;
+
+import com.example.smsservice.config.WorkerExecutors;
+import com.example.smsservice.model.EmailState;
+import com.example.smsservice.model.OutboundEmail;
+import com.example.smsservice.repository.OutboundEmailRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends queued mail from {@code email_outbox}. Due emails are split into batches and every batch goes out
+ * through a single {@link JavaMailSender#send(SimpleMailMessage...)} call, i.e. over one SMTP connection.
+ * Failed emails are retried with exponential backoff and marked {@link EmailState#DEAD} after the last attempt.
+ */
+@Service
+public class EmailDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailDispatcher.class);
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private final OutboundEmailRepository outboundEmailRepository;
+    private final JavaMailSender mailSender;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService sendExecutor;
+    private final int parallelism;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failedAttempts = new AtomicLong();
+    private final AtomicLong dead = new AtomicLong();
+
+    public EmailDispatcher(OutboundEmailRepository outboundEmailRepository,
+                           JavaMailSender mailSender,
+                           PlatformTransactionManager transactionManager,
+                           WorkerExecutors workerExecutors,
+                           @Value("${email.dispatch.parallelism:2}") int parallelism,
+                           @Value("${email.dispatch.batch-size:20}") int batchSize,
+                           @Value("${email.dispatch.max-attempts:6}") int maxAttempts,
+                           @Value("${email.dispatch.initial-backoff-ms:30000}") long initialBackoffMs,
+                           @Value("${email.dispatch.max-backoff-ms:3600000}") long maxBackoffMs) {
+        this.outboundEmailRepository = outboundEmailRepository;
+        this.mailSender = mailSender;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = Duration.ofMillis(initialBackoffMs);
+        this.maxBackoff = Duration.ofMillis(maxBackoffMs);
+        this.sendExecutor = workerExecutors.bounded("email-send-", parallelism);
+    }
+
+    @Scheduled(fixedDelayString = "${email.dispatch.poll-interval-ms:2000}")
+    public void dispatch() {
+        List<OutboundEmail> due;
+        do {
+            due = outboundEmailRepository.findDue(Instant.now(), PageRequest.of(0, batchSize * parallelism));
+            List<CompletableFuture<Void>> batches = new ArrayList<>();
+            for (int from = 0; from < due.size(); from += batchSize) {
+                List<OutboundEmail> batch = due.subList(from, Math.min(from + batchSize, due.size()));
+                batches.add(CompletableFuture.runAsync(() -> sendBatch(batch), sendExecutor));
+            }
+            CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).join();
+        } while (due.size() == batchSize * parallelism);
+    }
+
+    private void sendBatch(List<OutboundEmail> batch) {
+        SimpleMailMessage[] messages = new SimpleMailMessage[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            OutboundEmail email = batch.get(i);
+            SimpleMailMessage message = new SimpleMailMessage();
+            message.setTo(email.getRecipient());
+            message.setSubject(email.getSubject());
+            message.setText(email.getBody());
+            messages[i] = message;
+        }
+
+        Map<Object, Exception> failures = Map.of();
+        MailException batchFailure = null;
+        try {
+            mailSender.send(messages);
+        } catch (MailSendException e) {
+            failures = e.getFailedMessages();
+            if (failures.isEmpty()) {
+                batchFailure = e;
+            }
+        } catch (MailException e) {
+            // could not connect or authenticate, nothing went out
+            batchFailure = e;
+        }
+
+        List<Long> delivered = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Exception failure = batchFailure != null ? batchFailure : failures.get(messages[i]);
+            if (failure == null) {
+                delivered.add(batch.get(i).getId());
+            } else {
+                fail(batch.get(i), failure);
+            }
+        }
+        if (!delivered.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> outboundEmailRepository.markSent(delivered, Instant.now()));
+            sent.addAndGet(delivered.size());
+        }
+    }
+
+    private void fail(OutboundEmail email, Exception failure) {
+        int attempts = email.getAttempts() + 1;
+        boolean giveUp = attempts >= maxAttempts;
+        String error = String.valueOf(failure.getMessage());
+        if (error.length() > MAX_ERROR_LENGTH) {
+            error = error.substring(0, MAX_ERROR_LENGTH);
+        }
+        Instant nextAttemptAt = Instant.now().plus(backoff(attempts));
+        String lastError = error;
+        transactionTemplate.executeWithoutResult(status -> outboundEmailRepository.markFailed(email.getId(),
+                giveUp ? EmailState.DEAD : EmailState.PENDING, nextAttemptAt, lastError));
+        failedAttempts.incrementAndGet();
+        if (giveUp) {
+            dead.incrementAndGet();
+            logger.error("Email {} to {} moved to dead letter after {} attempts: {}",
+                    email.getId(), email.getRecipient(), attempts, error);
+        } else {
+            logger.warn("Email {} to {} failed (attempt {}), retrying at {}: {}",
+                    email.getId(), email.getRecipient(), attempts, nextAttemptAt, error);
+        }
+    }
+
+    private Duration backoff(int attempts) {
+        Duration delay = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sent", sent.get());
+        stats.put("failedAttempts", failedAttempts.get());
+        stats.put("deadLettered", dead.get());
+        stats.put("queueDepth", outboundEmailRepository.countByState(EmailState.PENDING));
+        stats.put("deadLetterDepth", outboundEmailRepository.countByState(EmailState.DEAD));
+        Instant oldest = outboundEmailRepository.findOldestPendingCreatedAt();
+        stats.put("oldestPendingAgeMs", oldest == null ? 0 : Duration.between(oldest, Instant.now()).toMillis());
+        return stats;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        sendExecutor.shutdownNow();
+    }
+}
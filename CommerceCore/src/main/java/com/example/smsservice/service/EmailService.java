@@ -1,21 +1,23 @@
 package com.example.smsservice.service;
 
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
+import com.example.smsservice.model.OutboundEmail;
+import com.example.smsservice.repository.OutboundEmailRepository;
 import org.springframework.stereotype.Service;
 
+/**
+ * Queues outgoing mail in the {@code email_outbox} table; {@link EmailDispatcher} sends it.
+ */
 @Service
 public class EmailService {
 
-    @Autowired
-    private JavaMailSender mailSender;
+    private final OutboundEmailRepository outboundEmailRepository;
 
-    public void sendResetPasswordEmail(String to, String resetLink) {
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setTo(to);
-        message.setSubject("Password Reset Request");
-        message.setText("Click the link to reset your password: " + resetLink);
-        mailSender.send(message);
+    public EmailService(OutboundEmailRepository outboundEmailRepository) {
+        this.outboundEmailRepository = outboundEmailRepository;
+    }
+
+    public void enqueueResetPasswordEmail(String to, String resetLink) {
+        outboundEmailRepository.save(new OutboundEmail(to, "Password Reset Request",
+                "Click the link to reset your password: " + resetLink));
     }
 }
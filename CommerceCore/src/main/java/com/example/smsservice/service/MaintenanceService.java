@@ -0,0 +1,146 @@
+package com.example.smsservice.service;
+
+import com.example.smsservice.model.CallbackState;
+import com.example.smsservice.model.EmailState;
+import com.example.smsservice.model.TransactionStatus;
+import com.example.smsservice.repository.OutboundEmailRepository;
+import com.example.smsservice.repository.PasswordResetTokenRepository;
+import com.example.smsservice.repository.PaymentCallbackRepository;
+import com.example.smsservice.repository.PaymentTransactionRepository;
+import com.example.smsservice.repository.SMSMessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Purges rows nobody reads any more. Every purge selects a small batch of ids through an index and deletes
+ * it in its own transaction, so locks are held only briefly and a large backlog never turns into one
+ * long-running DELETE.
+ */
+@Service
+public class MaintenanceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MaintenanceService.class);
+
+    private final PasswordResetTokenRepository passwordResetTokenRepository;
+    private final PaymentTransactionRepository paymentTransactionRepository;
+    private final PaymentCallbackRepository paymentCallbackRepository;
+    private final SMSMessageRepository smsMessageRepository;
+    private final OutboundEmailRepository outboundEmailRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Duration failedPaymentRetention;
+    private final Duration processedCallbackRetention;
+    private final Duration inactiveSmsRetention;
+    private final Duration sentEmailRetention;
+
+    private volatile Map<String, Object> lastRun = Map.of();
+
+    public MaintenanceService(PasswordResetTokenRepository passwordResetTokenRepository,
+                              PaymentTransactionRepository paymentTransactionRepository,
+                              PaymentCallbackRepository paymentCallbackRepository,
+                              SMSMessageRepository smsMessageRepository,
+                              OutboundEmailRepository outboundEmailRepository,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${maintenance.purge.batch-size:500}") int batchSize,
+                              @Value("${maintenance.purge.failed-payments-retention-days:90}") long failedPaymentDays,
+                              @Value("${maintenance.purge.processed-callbacks-retention-days:30}") long processedCallbackDays,
+                              @Value("${maintenance.purge.inactive-sms-retention-days:30}") long inactiveSmsDays,
+                              @Value("${maintenance.purge.sent-emails-retention-days:7}") long sentEmailDays) {
+        this.passwordResetTokenRepository = passwordResetTokenRepository;
+        this.paymentTransactionRepository = paymentTransactionRepository;
+        this.paymentCallbackRepository = paymentCallbackRepository;
+        this.smsMessageRepository = smsMessageRepository;
+        this.outboundEmailRepository = outboundEmailRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.failedPaymentRetention = Duration.ofDays(failedPaymentDays);
+        this.processedCallbackRetention = Duration.ofDays(processedCallbackDays);
+        this.inactiveSmsRetention = Duration.ofDays(inactiveSmsDays);
+        this.sentEmailRetention = Duration.ofDays(sentEmailDays);
+    }
+
+    @Scheduled(fixedDelayString = "${maintenance.purge.interval-ms:3600000}",
+            initialDelayString = "${maintenance.purge.initial-delay-ms:300000}")
+    public void purge() {
+        Instant now = Instant.now();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("ranAt", now.toString());
+
+        summary.put("expiredResetTokens", purge("expired reset tokens", passwordResetTokenRepository,
+                page -> passwordResetTokenRepository.findExpiredIds(now, page)));
+
+        LocalDateTime failedBefore = LocalDateTime.now().minus(failedPaymentRetention);
+        summary.put("failedPayments", purge("failed payments", paymentTransactionRepository,
+                page -> paymentTransactionRepository.findIdsByStatusCreatedBefore(TransactionStatus.FAILED, failedBefore, page)));
+
+        Instant callbacksBefore = now.minus(processedCallbackRetention);
+        summary.put("processedCallbacks", purge("processed payment callbacks", paymentCallbackRepository,
+                page -> paymentCallbackRepository.findIdsByStateReceivedBefore(CallbackState.PROCESSED, callbacksBefore, page)));
+
+        Instant smsBefore = now.minus(inactiveSmsRetention);
+        summary.put("inactiveNumberSms", purge("SMS of inactive numbers", smsMessageRepository,
+                page -> smsMessageRepository.findInactiveIdsReceivedBefore(smsBefore, SmsIngestionService.POLLED_STATUSES, page)));
+
+        Instant emailsBefore = now.minus(sentEmailRetention);
+        summary.put("sentEmails", purge("sent emails", outboundEmailRepository,
+                page -> outboundEmailRepository.findIdsByStateCreatedBefore(EmailState.SENT, emailsBefore, page)));
+
+        lastRun = summary;
+    }
+
+    private Map<String, Object> purge(String name, JpaRepository<?, Long> repository, Function<Pageable, List<Long>> nextIds) {
+        long started = System.nanoTime();
+        long deleted = 0;
+        int batches = 0;
+        String error = null;
+        try {
+            Pageable page = PageRequest.of(0, batchSize);
+            List<Long> ids;
+            do {
+                ids = nextIds.apply(page);
+                if (!ids.isEmpty()) {
+                    List<Long> batch = ids;
+                    transactionTemplate.executeWithoutResult(status -> repository.deleteAllByIdInBatch(batch));
+                    deleted += ids.size();
+                    batches++;
+                }
+            } while (ids.size() == batchSize);
+        } catch (RuntimeException e) {
+            error = e.getMessage();
+            logger.error("Purge of {} stopped after {} rows: {}", name, deleted, error);
+        }
+
+        long durationMs = (System.nanoTime() - started) / 1_000_000;
+        if (deleted > 0) {
+            logger.info("Purged {} {} in {} batches, {} ms", deleted, name, batches, durationMs);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("deleted", deleted);
+        result.put("batches", batches);
+        result.put("durationMs", durationMs);
+        if (error != null) {
+            result.put("error", error);
+        }
+        return result;
+    }
+
+    public Map<String, Object> lastRun() {
+        return lastRun;
+    }
+}
@@ -11,6 +11,9 @@ public class MarkupService {
 
     private final MarkupRepository markupRepository;
 
+    // the markup only changes through updateMarkup, so it is read from the database once
+    private volatile Double cachedValue;
+
     public Markup getCurrentMarkup() {
         return markupRepository.findAll().stream().findFirst().orElseGet(() -> {
             Markup defaultMarkup = new Markup();
@@ -19,9 +22,20 @@ public class MarkupService {
         });
     }
 
+    public double getMarkupValue() {
+        Double value = cachedValue;
+        if (value == null) {
+            value = getCurrentMarkup().getValue();
+            cachedValue = value;
+        }
+        return value;
+    }
+
     public Markup updateMarkup(double value) {
         Markup markup = getCurrentMarkup();
         markup.setValue(value);
-        return markupRepository.save(markup);
+        Markup saved = markupRepository.save(markup);
+        cachedValue = saved.getValue();
+        return saved;
     }
 }
@@ -0,0 +1,216 @@
+package com.example.smsservice.service;
+
+import com.example.smsservice.config.WorkerExecutors;
+import com.example.smsservice.provider.ProviderClient;
+import com.example.smsservice.repository.PhoneNumberRepository;
+import com.example.smsservice.repository.PhoneNumberRepository.ExpiringNumberView;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Expires rented numbers once {@code PhoneNumber.expires} has passed: the status is switched to
+ * {@value #EXPIRED_STATUS}, which also stops SMS polling, and the number is handed back to the provider.
+ * <p>
+ * A periodic sweep catches up on everything already due, in chunks, using the (status, expires) index.
+ * Numbers due within the timer horizon are also kept in a {@link DelayQueue}, so they expire on time
+ * between sweeps without scanning the table.
+ */
+@Service
+public class NumberExpiryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NumberExpiryService.class);
+
+    public static final String EXPIRED_STATUS = "expired";
+
+    private final PhoneNumberRepository phoneNumberRepository;
+    private final ProviderClient providerClient;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService releaseExecutor;
+    private final int chunkSize;
+    private final Duration timerHorizon;
+    private final int timerCapacity;
+
+    private final DelayQueue<DueNumber> timer = new DelayQueue<>();
+    private final Set<Long> scheduled = ConcurrentHashMap.newKeySet();
+    private final Thread timerThread;
+
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private final AtomicLong releaseFailures = new AtomicLong();
+
+    public NumberExpiryService(PhoneNumberRepository phoneNumberRepository,
+                               ProviderClient providerClient,
+                               PlatformTransactionManager transactionManager,
+                               WorkerExecutors workerExecutors,
+                               @Value("${numbers.expiry.chunk-size:200}") int chunkSize,
+                               @Value("${numbers.expiry.release-parallelism:4}") int releaseParallelism,
+                               @Value("${numbers.expiry.timer-horizon-ms:600000}") long timerHorizonMs,
+                               @Value("${numbers.expiry.timer-capacity:10000}") int timerCapacity) {
+        this.phoneNumberRepository = phoneNumberRepository;
+        this.providerClient = providerClient;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.timerHorizon = Duration.ofMillis(timerHorizonMs);
+        this.timerCapacity = timerCapacity;
+        this.releaseExecutor = workerExecutors.providerBound("number-release-", releaseParallelism);
+        this.timerThread = new CustomizableThreadFactory("number-expiry-timer-").newThread(this::runTimer);
+        this.timerThread.setDaemon(true);
+    }
+
+    @PostConstruct
+    void startTimer() {
+        timerThread.start();
+    }
+
+    /**
+     * Expires everything that is already due, then loads the numbers due within the timer horizon.
+     */
+    @Scheduled(fixedDelayString = "${numbers.expiry.sweep-interval-ms:60000}")
+    public void sweep() {
+        long started = System.nanoTime();
+        int total = 0;
+        List<ExpiringNumberView> chunk;
+        do {
+            LocalDateTime now = LocalDateTime.now();
+            chunk = transactionTemplate.execute(status -> expireChunk(now));
+            total += chunk.size();
+            releaseAll(chunk);
+        } while (chunk.size() == chunkSize);
+
+        int queued = fillTimer();
+        if (total > 0) {
+            logger.info("Expired {} numbers in {} ms, {} more queued on the timer",
+                    total, (System.nanoTime() - started) / 1_000_000, queued);
+        }
+    }
+
+    private List<ExpiringNumberView> expireChunk(LocalDateTime now) {
+        List<ExpiringNumberView> due = phoneNumberRepository.lockExpiring(
+                SmsIngestionService.POLLED_STATUSES, now, chunkSize);
+        if (!due.isEmpty()) {
+            phoneNumberRepository.updateStatus(due.stream().map(ExpiringNumberView::getId).toList(), EXPIRED_STATUS);
+            expired.addAndGet(due.size());
+        }
+        return due;
+    }
+
+    private int fillTimer() {
+        List<ExpiringNumberView> upcoming = phoneNumberRepository.findExpiring(SmsIngestionService.POLLED_STATUSES,
+                LocalDateTime.now().plus(timerHorizon), PageRequest.of(0, timerCapacity));
+        int added = 0;
+        for (ExpiringNumberView number : upcoming) {
+            if (scheduled.size() >= timerCapacity) {
+                break;
+            }
+            if (scheduled.add(number.getId())) {
+                timer.put(new DueNumber(number.getId(), number.getExpires()));
+                added++;
+            }
+        }
+        return added;
+    }
+
+    private void runTimer() {
+        while (!Thread.currentThread().isInterrupted()) {
+            DueNumber due;
+            try {
+                due = timer.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            scheduled.remove(due.id());
+            try {
+                // the sweep or a return may have dealt with it already, then there is nothing to lock
+                ExpiringNumberView number = transactionTemplate.execute(status -> phoneNumberRepository
+                        .lockExpiringById(due.id(), SmsIngestionService.POLLED_STATUSES, LocalDateTime.now())
+                        .map(view -> {
+                            phoneNumberRepository.updateStatus(List.of(view.getId()), EXPIRED_STATUS);
+                            return view;
+                        })
+                        .orElse(null));
+                if (number != null) {
+                    expired.incrementAndGet();
+                    releaseExecutor.execute(() -> release(number));
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Timed expiry of number {} failed, the next sweep will retry: {}", due.id(), e.getMessage());
+            }
+        }
+    }
+
+    private void releaseAll(List<ExpiringNumberView> numbers) {
+        List<CompletableFuture<Void>> releases = new ArrayList<>(numbers.size());
+        for (ExpiringNumberView number : numbers) {
+            releases.add(CompletableFuture.runAsync(() -> release(number), releaseExecutor));
+        }
+        CompletableFuture.allOf(releases.toArray(CompletableFuture[]::new)).join();
+    }
+
+    // best effort: the provider also drops expired rentals on its side
+    private void release(ExpiringNumberView number) {
+        try {
+            if (PhoneNumberService.LONG_TERM_RENTAL.equals(number.getRentalType())) {
+                providerClient.releaseLongTerm(number.getPhoneNumber(), number.getServiceName());
+            } else if (number.getExternalId() != null) {
+                providerClient.reject(number.getExternalId());
+            }
+            released.incrementAndGet();
+        } catch (RuntimeException e) {
+            releaseFailures.incrementAndGet();
+            logger.warn("Could not release expired number {} upstream: {}", number.getPhoneNumber(), e.getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("expired", expired.get());
+        stats.put("released", released.get());
+        stats.put("releaseFailures", releaseFailures.get());
+        stats.put("timerQueued", scheduled.size());
+        return stats;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        timerThread.interrupt();
+        releaseExecutor.shutdownNow();
+    }
+
+    private record DueNumber(Long id, LocalDateTime expires) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Duration.between(LocalDateTime.now(), expires));
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return expires.compareTo(((DueNumber) other).expires);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.smsservice.service;
+
+import com.example.smsservice.config.WorkerExecutors;
+import com.example.smsservice.model.CallbackState;
+import com.example.smsservice.model.PaymentCallback;
+import com.example.smsservice.repository.PaymentCallbackRepository;
+import jakarta.annotation.PreDestroy;
+import org.hibernate.exception.ConstraintViolationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable inbox for NOWPayments IPNs. The callback endpoint only inserts a row; a worker pool applies
+ * the rows in batches. Callbacks of the same order are applied one after another in arrival order,
+ * different orders in parallel. Each row is applied and marked processed in one transaction, and
+ * {@link PaymentService#processCallback} only moves a payment out of PENDING once, so a row picked up
+ * twice (e.g. by two instances) still credits the balance a single time.
+ * <p>
+ * A failed callback is retried with exponential backoff; later callbacks of its order wait for it.
+ */
+@Service
+public class PaymentCallbackInbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentCallbackInbox.class);
+    private static final int MAX_ERROR_LENGTH = 255;
+    private static final String ORDER_KEY_PREFIX = "order:";
+    private static final String UNIQUE_KEY = "uk_payment_callback";
+
+    private final PaymentCallbackRepository callbackRepository;
+    private final PaymentService paymentService;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService workers;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public PaymentCallbackInbox(PaymentCallbackRepository callbackRepository,
+                                PaymentService paymentService,
+                                PlatformTransactionManager transactionManager,
+                                WorkerExecutors workerExecutors,
+                                @Value("${payments.callbacks.batch-size:100}") int batchSize,
+                                @Value("${payments.callbacks.parallelism:2}") int parallelism,
+                                @Value("${payments.callbacks.max-attempts:5}") int maxAttempts,
+                                @Value("${payments.callbacks.initial-backoff-ms:10000}") long initialBackoffMs,
+                                @Value("${payments.callbacks.max-backoff-ms:600000}") long maxBackoffMs) {
+        this.callbackRepository = callbackRepository;
+        this.paymentService = paymentService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = Duration.ofMillis(initialBackoffMs);
+        this.maxBackoff = Duration.ofMillis(maxBackoffMs);
+        this.workers = workerExecutors.bounded("payment-callback-", parallelism);
+    }
+
+    /**
+     * Stores the callback for asynchronous processing. Returns {@code false} if the same
+     * (payment_id, status) pair was already received.
+     */
+    public boolean accept(String orderId, String paymentId, String paymentStatus, double amountPaid) {
+        PaymentCallback callback = new PaymentCallback();
+        callback.setOrderId(orderId);
+        // payment_id is optional in the payload; fall back to the order so the unique key still applies
+        callback.setPaymentId(paymentId != null ? paymentId : ORDER_KEY_PREFIX + orderId);
+        callback.setPaymentStatus(paymentStatus.toLowerCase());
+        callback.setAmountPaid(amountPaid);
+        callback.setState(CallbackState.NEW);
+        callback.setReceivedAt(Instant.now());
+        callback.setNextAttemptAt(callback.getReceivedAt());
+        try {
+            callbackRepository.save(callback);
+        } catch (DataIntegrityViolationException e) {
+            // anything but the (payment_id, status) key is a real failure; the 5xx makes NOWPayments retry
+            if (!isDuplicate(e)) {
+                throw e;
+            }
+            duplicates.incrementAndGet();
+            logger.info("Duplicate callback ignored: orderId={}, paymentId={}, status={}", orderId, paymentId, paymentStatus);
+            return false;
+        }
+        received.incrementAndGet();
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${payments.callbacks.poll-interval-ms:1000}")
+    public void drain() {
+        Instant now = Instant.now();
+        long afterId = 0;
+        List<PaymentCallback> batch;
+        do {
+            batch = callbackRepository.findDue(now, afterId, PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            Map<String, List<PaymentCallback>> byOrder = new LinkedHashMap<>();
+            for (PaymentCallback callback : batch) {
+                byOrder.computeIfAbsent(callback.getOrderId(), key -> new ArrayList<>()).add(callback);
+            }
+            List<CompletableFuture<Void>> results = new ArrayList<>(byOrder.size());
+            for (List<PaymentCallback> orderCallbacks : byOrder.values()) {
+                results.add(CompletableFuture.runAsync(() -> applyInOrder(orderCallbacks), workers));
+            }
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).join();
+
+            afterId = batch.get(batch.size() - 1).getId();
+        } while (batch.size() == batchSize);
+    }
+
+    // stops at the first failure so the rest of the order waits for its retry
+    private void applyInOrder(List<PaymentCallback> orderCallbacks) {
+        for (PaymentCallback callback : orderCallbacks) {
+            if (!apply(callback)) {
+                return;
+            }
+        }
+    }
+
+    private boolean apply(PaymentCallback callback) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                paymentService.processCallback(callback.getOrderId(), paymentId(callback),
+                        callback.getPaymentStatus(), callback.getAmountPaid());
+                callbackRepository.markProcessed(callback.getId(), Instant.now());
+            });
+            processed.incrementAndGet();
+            return true;
+        } catch (RuntimeException e) {
+            int attempts = callback.getAttempts() + 1;
+            boolean giveUp = attempts >= maxAttempts;
+            String error = String.valueOf(e.getMessage());
+            Instant nextAttemptAt = Instant.now().plus(backoff(attempts));
+            transactionTemplate.executeWithoutResult(status -> callbackRepository.markAttemptFailed(callback.getId(),
+                    giveUp ? CallbackState.FAILED : CallbackState.NEW, nextAttemptAt,
+                    error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error));
+            if (giveUp) {
+                failed.incrementAndGet();
+                logger.error("Giving up on callback {} for order {} after {} attempts: {}",
+                        callback.getId(), callback.getOrderId(), attempts, error);
+            } else {
+                logger.warn("Callback {} for order {} failed (attempt {}), will retry at {}: {}",
+                        callback.getId(), callback.getOrderId(), attempts, nextAttemptAt, error);
+            }
+            return false;
+        }
+    }
+
+    private Duration backoff(int attempts) {
+        Duration delay = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("received", received.get());
+        stats.put("duplicates", duplicates.get());
+        stats.put("processed", processed.get());
+        stats.put("failed", failed.get());
+        stats.put("backlog", callbackRepository.countByState(CallbackState.NEW));
+        Instant oldest = callbackRepository.findOldestReceivedAt(CallbackState.NEW);
+        stats.put("oldestBacklogAgeMs", oldest == null ? 0 : Duration.between(oldest, Instant.now()).toMillis());
+        return stats;
+    }
+
+    private static boolean isDuplicate(DataIntegrityViolationException e) {
+        return e.getCause() instanceof ConstraintViolationException violation
+                && violation.getKind() == ConstraintViolationException.ConstraintKind.UNIQUE
+                && violation.getConstraintName() != null
+                && violation.getConstraintName().toLowerCase().contains(UNIQUE_KEY);
+    }
+
+    private static String paymentId(PaymentCallback callback) {
+        return callback.getPaymentId().startsWith(ORDER_KEY_PREFIX) ? null : callback.getPaymentId();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.smsservice.service;
+
+import com.example.smsservice.config.WorkerExecutors;
+import com.example.smsservice.repository.PaymentTransactionRepository;
+import com.example.smsservice.repository.PaymentTransactionRepository.StalePaymentView;
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Settles payments whose IPN never arrived. Stale PENDING transactions are read in keyset chunks and
+ * looked up at NOWPayments with bounded parallelism and a request rate cap, by payment id or, when no IPN
+ * ever brought one, through the payments of their invoice. The result is applied through
+ * {@link PaymentService#processCallback}, so a late IPN and the reconciler cannot both credit a payment.
+ * An invoice still unpaid after {@code payments.reconcile.unpaid-invoice-expiry-ms} is marked failed.
+ */
+@Service
+public class PaymentReconciler {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentReconciler.class);
+    private static final LocalDateTime KEYSET_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final PaymentTransactionRepository paymentTransactionRepository;
+    private final PaymentService paymentService;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService lookupExecutor;
+    private final Duration staleAfter;
+    private final Duration unpaidInvoiceExpiry;
+    private final int batchSize;
+    private final long requestIntervalNanos;
+
+    private final Object rateLock = new Object();
+    private long nextRequestAt = System.nanoTime();
+
+    private final AtomicLong checked = new AtomicLong();
+    private final AtomicLong updated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile Map<String, Object> lastRun = Map.of();
+
+    public PaymentReconciler(PaymentTransactionRepository paymentTransactionRepository,
+                             PaymentService paymentService,
+                             PlatformTransactionManager transactionManager,
+                             WorkerExecutors workerExecutors,
+                             @Value("${payments.reconcile.stale-after-ms:900000}") long staleAfterMs,
+                             @Value("${payments.reconcile.unpaid-invoice-expiry-ms:604800000}") long unpaidInvoiceExpiryMs,
+                             @Value("${payments.reconcile.batch-size:100}") int batchSize,
+                             @Value("${payments.reconcile.parallelism:4}") int parallelism,
+                             @Value("${payments.reconcile.requests-per-second:5}") double requestsPerSecond) {
+        this.paymentTransactionRepository = paymentTransactionRepository;
+        this.paymentService = paymentService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.staleAfter = Duration.ofMillis(staleAfterMs);
+        this.unpaidInvoiceExpiry = Duration.ofMillis(unpaidInvoiceExpiryMs);
+        this.batchSize = batchSize;
+        this.requestIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        this.lookupExecutor = workerExecutors.bounded("payment-reconcile-", parallelism);
+    }
+
+    @Scheduled(fixedDelayString = "${payments.reconcile.interval-ms:600000}",
+            initialDelayString = "${payments.reconcile.initial-delay-ms:120000}")
+    public void reconcile() {
+        long started = System.nanoTime();
+        LocalDateTime createdBefore = LocalDateTime.now().minus(staleAfter);
+        LocalDateTime afterCreatedAt = KEYSET_START;
+        long afterId = 0;
+        int runChecked = 0;
+        int runUpdated = 0;
+        int runFailed = 0;
+
+        List<StalePaymentView> batch;
+        do {
+            batch = paymentTransactionRepository.findStalePending(createdBefore, afterCreatedAt, afterId,
+                    PageRequest.of(0, batchSize));
+            List<CompletableFuture<Outcome>> results = new ArrayList<>(batch.size());
+            for (StalePaymentView payment : batch) {
+                results.add(CompletableFuture.supplyAsync(() -> check(payment), lookupExecutor));
+            }
+            for (CompletableFuture<Outcome> result : results) {
+                Outcome outcome = result.join();
+                runChecked++;
+                if (outcome == Outcome.UPDATED) {
+                    runUpdated++;
+                } else if (outcome == Outcome.FAILED) {
+                    runFailed++;
+                }
+            }
+            if (!batch.isEmpty()) {
+                StalePaymentView last = batch.get(batch.size() - 1);
+                afterCreatedAt = last.getCreatedAt();
+                afterId = last.getId();
+            }
+        } while (batch.size() == batchSize);
+
+        checked.addAndGet(runChecked);
+        updated.addAndGet(runUpdated);
+        failed.addAndGet(runFailed);
+
+        long durationMs = (System.nanoTime() - started) / 1_000_000;
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("ranAt", Instant.now().toString());
+        summary.put("durationMs", durationMs);
+        summary.put("checked", runChecked);
+        summary.put("updated", runUpdated);
+        summary.put("failed", runFailed);
+        lastRun = summary;
+        if (runChecked > 0) {
+            logger.info("Payment reconciliation finished in {} ms: {} checked, {} updated, {} failed",
+                    durationMs, runChecked, runUpdated, runFailed);
+        }
+    }
+
+    private Outcome check(StalePaymentView payment) {
+        try {
+            awaitRequestSlot();
+            JsonNode remote;
+            if (payment.getTransactionId() != null) {
+                remote = paymentService.fetchPayment(payment.getTransactionId());
+            } else {
+                remote = paymentService.findInvoicePayment(payment.getInvoiceId()).orElse(null);
+                if (remote == null) {
+                    return expireUnpaid(payment);
+                }
+            }
+            String paymentId = payment.getTransactionId() != null
+                    ? payment.getTransactionId() : remote.path("payment_id").asText(null);
+            String paymentStatus = remote.path("payment_status").asText();
+            double amountPaid = remote.path("actually_paid").asDouble(0);
+            Boolean settled = transactionTemplate.execute(status -> paymentService.processCallback(
+                    payment.getOrderId(), paymentId, paymentStatus, amountPaid));
+            return Boolean.TRUE.equals(settled) ? Outcome.UPDATED : Outcome.UNCHANGED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Outcome.FAILED;
+        } catch (RuntimeException e) {
+            logger.warn("Reconciliation of order {} failed: {}", payment.getOrderId(), e.getMessage());
+            return Outcome.FAILED;
+        }
+    }
+
+    private Outcome expireUnpaid(StalePaymentView payment) {
+        if (payment.getCreatedAt().isAfter(LocalDateTime.now().minus(unpaidInvoiceExpiry))) {
+            return Outcome.UNCHANGED;
+        }
+        logger.info("Invoice {} of order {} was never paid, marking it failed", payment.getInvoiceId(), payment.getOrderId());
+        Boolean settled = transactionTemplate.execute(status -> paymentService.processCallback(
+                payment.getOrderId(), null, "expired", 0));
+        return Boolean.TRUE.equals(settled) ? Outcome.UPDATED : Outcome.UNCHANGED;
+    }
+
+    // spaces request starts evenly, whatever the number of lookup threads
+    private void awaitRequestSlot() throws InterruptedException {
+        long slot;
+        synchronized (rateLock) {
+            long now = System.nanoTime();
+            slot = Math.max(now, nextRequestAt);
+            nextRequestAt = slot + requestIntervalNanos;
+        }
+        long waitNanos = slot - System.nanoTime();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("checked", checked.get());
+        stats.put("updated", updated.get());
+        stats.put("failed", failed.get());
+        stats.put("lastRun", lastRun);
+        return stats;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        lookupExecutor.shutdownNow();
+    }
+
+    private enum Outcome {
+        UPDATED,
+        UNCHANGED,
+        FAILED
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.smsservice.service;
 
 import com.example.smsservice.dto.TransactionDTO;
+import com.example.smsservice.dto.TransactionPage;
+import com.example.smsservice.model.BalanceEntryType;
 import com.example.smsservice.model.PaymentTransaction;
 import com.example.smsservice.model.TransactionStatus;
 import com.example.smsservice.model.User;
@@ -8,17 +10,26 @@ import com.example.smsservice.repository.PaymentTransactionRepository;
 import com.example.smsservice.repository.UserRepository;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.transaction.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.function.BiFunction;
 
 @Service
 public class PaymentService {
@@ -26,6 +37,8 @@ public class PaymentService {
     private final UserRepository userRepository;
     private final PaymentTransactionRepository paymentTransactionRepository;
     private final RestTemplate restTemplate;
+    private final BalanceService balanceService;
+    private final MeterRegistry meterRegistry;
 
     @Value("${nowpayments.api.key}")
     private String apiKey;
@@ -33,110 +46,204 @@ public class PaymentService {
     @Value("${nowpayments.ipn.secret}")
     private String ipnSecret;
 
-    private static final String NOWPAYMENTS_BASE_URL = "https://api.nowpayments.io/v1";
+    @Value("${nowpayments.api.url:https://api.nowpayments.io/v1}")
+    private String apiUrl;
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final List<TransactionStatus> ALL_STATUSES = List.of(TransactionStatus.values());
+    private static final List<TransactionStatus> SETTLED_STATUSES = Arrays.stream(TransactionStatus.values())
+            .filter(status -> status != TransactionStatus.PENDING)
+            .toList();
     private static final Logger logger = LoggerFactory.getLogger(PaymentService.class);
 
     public PaymentService(UserRepository userRepository, RestTemplate restTemplate,
-                          PaymentTransactionRepository paymentTransactionRepository) {
+                          PaymentTransactionRepository paymentTransactionRepository, BalanceService balanceService,
+                          MeterRegistry meterRegistry) {
         this.userRepository = userRepository;
         this.restTemplate = restTemplate;
         this.paymentTransactionRepository = paymentTransactionRepository;
+        this.balanceService = balanceService;
+        this.meterRegistry = meterRegistry;
     }
 
-    public List<TransactionDTO> getTransactionsByUsername(String username) {
-        User user = userRepository.findByUsername(username)
+    /**
+     * One page of a user's transactions, newest first. {@code cursor} is the {@code nextCursor} of the
+     * previous page, or null for the first one. Without cursor and limit the whole history is returned.
+     */
+    public TransactionPage getTransactionsByUsername(String username, TransactionStatus status,
+                                                     LocalDateTime from, LocalDateTime to, String cursor, Integer limit) {
+        Long userId = userRepository.findIdByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
-        List<PaymentTransaction> transactions = paymentTransactionRepository.findAllByUser(user);
-        return transactions.stream().map(this::toTransactionDTO).collect(Collectors.toList());
-    }
-
-
-    private TransactionDTO toTransactionDTO(PaymentTransaction transaction) {
-        return new TransactionDTO(
-                transaction.getTransactionId(),
-                transaction.getAmount(),
-                transaction.getStatus(),
-                transaction.getCreatedAt(),
-                transaction.getUser().getUsername()
-        );
+        return page(cursor, limit, (after, pageable) -> paymentTransactionRepository.findPageByUserId(userId,
+                status != null ? List.of(status) : ALL_STATUSES, from, to, after.createdAt(), after.id(), pageable));
     }
 
     @Transactional
     public void updateBalance(String username, double amount, boolean isAdding) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        if (isAdding) {
+            balanceService.credit(username, amount, BalanceEntryType.ADJUSTMENT, null);
+        } else {
+            balanceService.debit(username, amount, BalanceEntryType.ADJUSTMENT, null);
+        }
+    }
 
-        double newBalance = isAdding ? user.getBalance() + amount : user.getBalance() - amount;
-        if (newBalance < 0) {
-            throw new RuntimeException("Insufficient balance");
+    /**
+     * One page of all users' settled (non-PENDING) transactions, newest first. Without cursor and limit
+     * all of them are returned.
+     */
+    public TransactionPage getAllTransactionsExcludingPending(TransactionStatus status, LocalDateTime from,
+                                                              LocalDateTime to, String cursor, Integer limit) {
+        if (status == TransactionStatus.PENDING) {
+            throw new IllegalArgumentException("Pending transactions are not listed");
         }
+        return page(cursor, limit, (after, pageable) -> paymentTransactionRepository.findPage(
+                status != null ? List.of(status) : SETTLED_STATUSES, from, to, after.createdAt(), after.id(), pageable));
+    }
 
-        user.setBalance(newBalance);
-        userRepository.save(user);
+    private static TransactionPage page(String cursor, Integer limit,
+                                        BiFunction<Cursor, Pageable, List<TransactionDTO>> query) {
+        if ((cursor == null || cursor.isBlank()) && limit == null) {
+            // clients from before paging know nothing about X-Next-Cursor and expect the complete list
+            return new TransactionPage(query.apply(Cursor.FIRST, Pageable.unpaged()), null);
+        }
+        int size = pageSize(limit != null ? limit : DEFAULT_PAGE_SIZE);
+        return toPage(query.apply(Cursor.decode(cursor), PageRequest.of(0, size + 1)), size);
     }
 
-    public List<TransactionDTO> getAllTransactionsExcludingPending() {
-        List<PaymentTransaction> transactions = paymentTransactionRepository.findAll();
-        return transactions.stream()
-                .filter(transaction -> transaction.getStatus() != TransactionStatus.PENDING)
-                .map(this::toTransactionDTO)
-                .collect(Collectors.toList());
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
     }
 
-    private TransactionStatus mapStatus(String paymentStatus) {
+    // one extra row is fetched to tell whether another page exists
+    private static TransactionPage toPage(List<TransactionDTO> rows, int size) {
+        if (rows.size() <= size) {
+            return new TransactionPage(rows, null);
+        }
+        List<TransactionDTO> items = rows.subList(0, size);
+        TransactionDTO last = items.get(size - 1);
+        return new TransactionPage(items, new Cursor(last.getDate(), last.getId()).encode());
+    }
+
+    private record Cursor(LocalDateTime createdAt, Long id) {
+
+        private static final Cursor FIRST = new Cursor(null, null);
+
+        String encode() {
+            String raw = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) {
+                return FIRST;
+            }
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.indexOf('|');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, separator)),
+                        Long.parseLong(raw.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+    }
+
+    public TransactionStatus mapStatus(String paymentStatus) {
         switch (paymentStatus.toLowerCase()) {
             case "success":
+            case "finished":
                 return TransactionStatus.FINISHED;
             case "failed":
+            case "refunded":
+            case "expired":
                 return TransactionStatus.FAILED;
             case "waiting":
+            case "confirming":
+            case "confirmed":
+            case "sending":
+            case "partially_paid":
                 return TransactionStatus.PENDING; // Мапим на PENDING
             default:
                 throw new IllegalArgumentException("Unknown payment status: " + paymentStatus);
         }
     }
 
+    /**
+     * Applies a payment status to the transaction. Returns {@code true} if the transaction left PENDING.
+     */
     @Transactional
-    public void processCallback(String orderId, String transactionId, String paymentStatus, double amountPaid) {
+    public boolean processCallback(String orderId, String transactionId, String paymentStatus, double amountPaid) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String status = "unknown";
+        String outcome = "error";
+        try {
+            status = mapStatus(paymentStatus).name().toLowerCase();
+            boolean settled = applyCallback(orderId, transactionId, paymentStatus, amountPaid);
+            outcome = settled ? "settled" : "ignored";
+            return settled;
+        } finally {
+            sample.stop(Timer.builder("payments.callbacks")
+                    .description("Payment status updates applied from IPN callbacks and reconciliation")
+                    .tag("status", status)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    private boolean applyCallback(String orderId, String transactionId, String paymentStatus, double amountPaid) {
         logger.info("Processing callback: orderId={}, transactionId={}, status={}, amountPaid={}",
                 orderId, transactionId, paymentStatus, amountPaid);
 
-        PaymentTransaction transaction = paymentTransactionRepository.findByOrderId(orderId)
+        String username = paymentTransactionRepository.findUsernameByOrderId(orderId)
                 .orElseThrow(() -> new IllegalArgumentException("Transaction not found for orderId: " + orderId));
 
         TransactionStatus status = mapStatus(paymentStatus);
 
-        // Если статус PENDING, обновляем только статус
+        // Если статус PENDING, только запоминаем payment_id
         if (status == TransactionStatus.PENDING) {
-            transaction.setStatus(status);
-            paymentTransactionRepository.save(transaction);
-            logger.info("Transaction updated to PENDING for orderId={}", orderId);
-            return;
+            if (transactionId != null) {
+                paymentTransactionRepository.attachTransactionId(orderId, transactionId);
+            }
+            return false;
         }
 
-        // Если статус FINISHED, обновляем баланс
-        if (status == TransactionStatus.FINISHED) {
-            updateBalance(transaction.getUser().getUsername(), amountPaid, true);
-            logger.info("Transaction completed successfully for user: {}", transaction.getUser().getUsername());
+        // Conditional update from PENDING: a repeated or concurrent notification finds nothing to change
+        if (paymentTransactionRepository.settlePending(orderId, status, transactionId) == 0) {
+            logger.info("Transaction {} is already settled, ignoring {} callback", orderId, paymentStatus);
+            return false;
         }
 
-        // Обновляем статус и сохраняем
-        transaction.setStatus(status);
-        if (transactionId != null) {
-            transaction.setTransactionId(transactionId);
+        // Если статус FINISHED, обновляем баланс
+        if (status == TransactionStatus.FINISHED) {
+            balanceService.credit(username, amountPaid, BalanceEntryType.DEPOSIT, orderId);
+            logger.info("Transaction completed successfully for user: {}", username);
         }
-        paymentTransactionRepository.save(transaction);
+        return true;
     }
 
 
     public double getUserBalance(String username) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        return user.getBalance();
+        return balanceService.getBalance(username);
     }
 
     public String createPayment(String orderId, double amount, String currency, String crypto, String username) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            String invoiceUrl = requestInvoice(orderId, amount, currency, crypto, username);
+            outcome = "success";
+            return invoiceUrl;
+        } finally {
+            sample.stop(Timer.builder("payments.create")
+                    .description("Payment creation, including the NOWPayments invoice request")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    private String requestInvoice(String orderId, double amount, String currency, String crypto, String username) {
         logger.info("Creating payment transaction for orderId: {}", orderId);
 
         User user = userRepository.findByUsername(username)
@@ -165,9 +272,12 @@ public class PaymentService {
             HttpHeaders headers = createHeaders();
             HttpEntity<Map<String, Object>> requestEntity = new HttpEntity<>(requestBody, headers);
 
-            ResponseEntity<String> response = restTemplate.postForEntity(NOWPAYMENTS_BASE_URL + "/invoice", requestEntity, String.class);
+            ResponseEntity<String> response = restTemplate.postForEntity(apiUrl + "/invoice", requestEntity, String.class);
             if (response.getStatusCode() == HttpStatus.OK) {
                 logger.info("Invoice created successfully for orderId: {}", orderId);
+                // lets the reconciler find the payment even if none of its IPNs arrive
+                transaction.setInvoiceId(extractField(response.getBody(), "id"));
+                paymentTransactionRepository.save(transaction);
                 return extractField(response.getBody(), "invoice_url");
             } else {
                 throw new RuntimeException("Failed to create payment: " + response.getBody());
@@ -179,19 +289,59 @@ public class PaymentService {
     }
 
     public String checkPaymentStatus(String paymentId) {
+        return fetchPayment(paymentId).path("payment_status").asText();
+    }
+
+    /**
+     * Reads the payment from NOWPayments ({@code GET /payment/{id}}).
+     */
+    public JsonNode fetchPayment(String paymentId) {
         HttpHeaders headers = createHeaders();
         HttpEntity<Void> requestEntity = new HttpEntity<>(headers);
 
         ResponseEntity<String> response = restTemplate.exchange(
-                NOWPAYMENTS_BASE_URL + "/payment/" + paymentId, HttpMethod.GET, requestEntity, String.class);
+                apiUrl + "/payment/" + paymentId, HttpMethod.GET, requestEntity, String.class);
 
         if (response.getStatusCode() == HttpStatus.OK) {
-            return extractField(response.getBody(), "payment_status");
+            try {
+                return new ObjectMapper().readTree(response.getBody());
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to parse payment response: " + e.getMessage(), e);
+            }
         } else {
             throw new RuntimeException("Failed to fetch payment status: " + response.getBody());
         }
     }
 
+    /**
+     * Finds the payment made for an invoice ({@code GET /payment/?invoiceId=}): the finished one if there is
+     * one, otherwise the newest. Empty while the invoice has not been paid.
+     */
+    public Optional<JsonNode> findInvoicePayment(String invoiceId) {
+        HttpHeaders headers = createHeaders();
+        HttpEntity<Void> requestEntity = new HttpEntity<>(headers);
+
+        ResponseEntity<String> response = restTemplate.exchange(
+                apiUrl + "/payment/?invoiceId={invoiceId}&sortBy=created_at&orderBy=desc",
+                HttpMethod.GET, requestEntity, String.class, invoiceId);
+
+        if (response.getStatusCode() != HttpStatus.OK) {
+            throw new RuntimeException("Failed to fetch invoice payments: " + response.getBody());
+        }
+        JsonNode payments;
+        try {
+            payments = new ObjectMapper().readTree(response.getBody()).path("data");
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to parse invoice payments: " + e.getMessage(), e);
+        }
+        for (JsonNode payment : payments) {
+            if ("finished".equalsIgnoreCase(payment.path("payment_status").asText())) {
+                return Optional.of(payment);
+            }
+        }
+        return payments.isEmpty() ? Optional.empty() : Optional.of(payments.get(0));
+    }
+
     private HttpHeaders createHeaders() {
         HttpHeaders headers = new HttpHeaders();
         headers.set("x-api-key", apiKey);
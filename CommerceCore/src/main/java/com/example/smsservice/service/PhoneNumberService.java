@@ -3,27 +3,32 @@ package com.example.smsservice.service;
 import com.example.smsservice.dto.PhoneNumberDTO;
 import com.example.smsservice.dto.SMSMessageDTO;
 import com.example.smsservice.model.*;
+import com.example.smsservice.provider.ProviderClient;
+import com.example.smsservice.provider.ProviderNumber;
 import com.example.smsservice.repository.PhoneNumberRepository;
+import com.example.smsservice.repository.PhoneNumberRepository.PhoneNumberView;
+import com.example.smsservice.repository.PurchaseOrderRepository;
 import com.example.smsservice.repository.SMSMessageRepository;
 import com.example.smsservice.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.transaction.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -34,303 +39,361 @@ public class PhoneNumberService {
     private final PhoneNumberRepository phoneNumberRepository;
     private final UserRepository userRepository;
     private final SMSMessageRepository smsMessageRepository;
-
-    private final RestTemplate restTemplate;
+    private final BalanceService balanceService;
+    private final ProviderClient providerClient;
+    private final PurchaseOrderRepository purchaseOrderRepository;
+    private final PricingEngine pricingEngine;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration staleOrderAge;
+
+    private static final int LONG_TERM_DURATION_DAYS = 30;
+    // lifetime assumed for an activation when the provider sends no usable expiry
+    private static final int SHORT_TERM_DEFAULT_MINUTES = 20;
+    private static final int SMS_PAGE_SIZE = 200;
+    private static final int RECOVERY_BATCH_SIZE = 100;
+    static final String LONG_TERM_RENTAL = "long_term";
+    private static final String SHORT_TERM_RENTAL = "short";
+    private static final String RETURNING_STATUS = "returning";
+    // spellings found in status; listed instead of lower() so the (serviceName, status) index is used
+    private static final List<String> AVAILABLE_STATUSES = List.of("AVAILABLE", "available", "Available");
 
     public PhoneNumberService(
             PhoneNumberRepository phoneNumberRepository,
             UserRepository userRepository,
-            SMSMessageRepository smsMessageRepository
+            SMSMessageRepository smsMessageRepository,
+            BalanceService balanceService,
+            ProviderClient providerClient,
+            PurchaseOrderRepository purchaseOrderRepository,
+            PricingEngine pricingEngine,
+            MeterRegistry meterRegistry,
+            PlatformTransactionManager transactionManager,
+            @Value("${orders.recovery.stale-after-ms:300000}") long staleOrderAgeMs
     ) {
         this.phoneNumberRepository = phoneNumberRepository;
         this.userRepository = userRepository;
         this.smsMessageRepository = smsMessageRepository;
-
-        this.restTemplate = new RestTemplate();
+        this.balanceService = balanceService;
+        this.providerClient = providerClient;
+        this.purchaseOrderRepository = purchaseOrderRepository;
+        this.pricingEngine = pricingEngine;
+        this.meterRegistry = meterRegistry;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.staleOrderAge = Duration.ofMillis(staleOrderAgeMs);
     }
 
-    @Transactional
-    public List<SMSMessageDTO> fetchSMSMessagesForPhoneNumber(String phoneNumber) {
-        PhoneNumber phoneNumberEntity = phoneNumberRepository.findByPhoneNumber(phoneNumber)
+    /**
+     * Messages stored by {@link SmsIngestionService} with an id greater than {@code sinceId}, oldest first.
+     */
+    public List<SMSMessageDTO> fetchSMSMessagesForPhoneNumber(String phoneNumber, long sinceId) {
+        Long phoneNumberId = phoneNumberRepository.findIdByPhoneNumber(phoneNumber)
                 .orElseThrow(() -> new RuntimeException("Phone number not found in the database"));
 
-        String apiUrl = "";
-        String fullUrl = UriComponentsBuilder.fromHttpUrl(apiUrl)
-                .queryParam("cmd", "")
-                .queryParam("user", "")
-                .queryParam("api_key", "")
-                .queryParam("mdn", phoneNumber)
-                .toUriString();
-
-        System.out.println("Fetching SMS messages from API: " + fullUrl);
-
-        ResponseEntity<Map> response = restTemplate.getForEntity(fullUrl, Map.class);
-
-        if (!response.getStatusCode().is2xxSuccessful()) {
-            throw new RuntimeException("Failed to fetch SMS messages from API. HTTP Status: " + response.getStatusCode());
-        }
-
-        Map<String, Object> responseBody = response.getBody();
-        if (responseBody == null || !"ok".equals(responseBody.get("status"))) {
-            // Обработка "No messages"
-            if ("No messages".equals(responseBody.get("message"))) {
-                System.out.println("No SMS messages found for phone number: " + phoneNumber);
-                return Collections.emptyList();
-            }
-            throw new RuntimeException("Error from API: " + responseBody.get("message"));
-        }
-
-        List<Map<String, Object>> messages = (List<Map<String, Object>>) responseBody.get("message");
-        if (messages == null || messages.isEmpty()) {
-            System.out.println("No SMS messages found for the provided phone number.");
-            return Collections.emptyList();
-        }
-
-        return messages.stream().map(message -> {
-            SMSMessageDTO smsDTO = new SMSMessageDTO();
-            smsDTO.setDate((String) message.get("date_time"));
-            smsDTO.setSender((String) message.get("from"));
-            smsDTO.setMessage((String) message.get("reply"));
-            return smsDTO;
-        }).collect(Collectors.toList());
+        return smsMessageRepository.findMessagesSince(phoneNumberId, sinceId, PageRequest.of(0, SMS_PAGE_SIZE));
     }
 
-    private Map<String, Object> callApi(String cmd, Map<String, String> params) {
-        String apiUrl = "";
-        UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromHttpUrl(apiUrl)
-                .queryParam("cmd", cmd)
-                .queryParam("user", "")
-                .queryParam("api_key", "");
-
-        params.forEach(uriBuilder::queryParam);
-
-        String requestUrl = uriBuilder.toUriString();
+    /**
+     * Returns a number in three steps: lock it in a short transaction, call the provider with no
+     * transaction open, then refund and delete it (or unlock it) in a second short transaction.
+     */
+    public String returnPhoneNumber(String username, String phoneNumber) {
+        logger.info("Returning phone number for user: {}, phoneNumber: {}", username, phoneNumber);
 
-        logger.info("Sending API request to command '{}'. Endpoint invoked.", cmd);
+        PurchaseOrder order = transactionTemplate.execute(status -> reserveReturn(username, phoneNumber));
+        boolean temporary = !LONG_TERM_RENTAL.equals(order.getRentalType());
 
         try {
-            ResponseEntity<Map<String, Object>> response = restTemplate.exchange(
-                    requestUrl,
-                    HttpMethod.GET,
-                    null,
-                    new ParameterizedTypeReference<>() {}
-            );
-
-            Map<String, Object> responseBody = response.getBody();
-            if (responseBody == null || !"ok".equalsIgnoreCase((String) responseBody.get("status"))) {
-                String errorMessage = responseBody != null
-                        ? (String) responseBody.getOrDefault("message", "Unknown error")
-                        : "No response body";
-                throw new ApiException("API error for command '" + cmd + "': " + errorMessage);
+            if (temporary) {
+                logger.info("Rejecting temporary phone number. External ID: {}", order.getExternalId());
+                providerClient.reject(order.getExternalId());
+            } else {
+                logger.info("Releasing long-term phone number: {}", phoneNumber);
+                providerClient.releaseLongTerm(phoneNumber, order.getServiceName());
             }
-            return responseBody;
-        } catch (Exception e) {
-            throw new ApiException("Failed to call API command '" + cmd + "': " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            transactionTemplate.executeWithoutResult(status -> failReturn(order.getId(), e.getMessage()));
+            throw e;
         }
-    }
 
-    @Transactional
-    public String returnPhoneNumber(String username, String phoneNumber) {
-        logger.info("Returning phone number for user: {}, phoneNumber: {}", username, phoneNumber);
+        transactionTemplate.executeWithoutResult(status -> completeReturn(order.getId()));
+        logger.info("Phone number {} returned, funds refunded and number deleted", phoneNumber);
+
+        return temporary
+                ? "Temporary phone number rejected successfully, funds refunded, and number deleted."
+                : "Long-term phone number released successfully, funds refunded, and number deleted.";
+    }
 
+    private PurchaseOrder reserveReturn(String username, String phoneNumber) {
         PhoneNumber phone = phoneNumberRepository.findByPhoneNumber(phoneNumber)
                 .orElseThrow(() -> new DatabaseException("Phone number not found in the database"));
 
         logger.info("Phone number found: {}, price: {}", phone.getPhoneNumber(), phone.getPrice());
 
-        if (phone.getPrice() < 5) {
-            return rejectTemporaryNumber(phone, username);
-        } else {
-            return releaseLongTermNumber(phone, username);
+        // only an active rental can be returned; the conditional update from that status also fails if the
+        // number expired or a concurrent return locked it in the meantime
+        if (!SmsIngestionService.POLLED_STATUSES.contains(phone.getStatus())
+                || phoneNumberRepository.compareAndSetStatus(phone.getId(), phone.getStatus(), RETURNING_STATUS) == 0) {
+            throw new IllegalStateException("Phone number is not an active rental or is already being returned: "
+                    + phoneNumber);
         }
-    }
-
-    private String rejectTemporaryNumber(PhoneNumber phone, String username) {
-        logger.info("Rejecting temporary phone number. External ID: {}", phone.getExternalId());
-
-        Map<String, String> params = Map.of("id", phone.getExternalId());
-        callApi("reject", params);
-
-        logger.info("Temporary phone number rejected successfully. Initiating refund...");
-        refundUser(username, phone.getPrice());
-
-        // Удаление номера из базы данных
-        phoneNumberRepository.delete(phone);
-        logger.info("Temporary phone number deleted from database: {}", phone.getPhoneNumber());
 
-        return "Temporary phone number rejected successfully, funds refunded, and number deleted.";
+        PurchaseOrder order = new PurchaseOrder();
+        order.setType(OrderType.RETURN);
+        order.setStatus(OrderStatus.PENDING);
+        order.setUsername(username);
+        order.setServiceName(phone.getServiceName());
+        order.setRentalType(phone.getRentalType());
+        order.setAmount(phone.getPrice());
+        order.setPhoneNumber(phone.getPhoneNumber());
+        order.setExternalId(phone.getExternalId());
+        order.setPreviousStatus(phone.getStatus());
+        return purchaseOrderRepository.save(order);
     }
 
-    private String releaseLongTermNumber(PhoneNumber phone, String username) {
-        logger.info("Releasing long-term phone number: {}", phone.getPhoneNumber());
-
-        Map<String, String> params = Map.of(
-                "mdn", phone.getPhoneNumber(),
-                "service", phone.getServiceName()
-        );
-        callApi("ltr_release", params);
-
-        logger.info("Long-term phone number released successfully. Initiating refund...");
-        refundUser(username, phone.getPrice());
-
-        phoneNumberRepository.delete(phone);
-        logger.info("Long-term phone number deleted from database: {}", phone.getPhoneNumber());
+    private void completeReturn(Long orderId) {
+        if (purchaseOrderRepository.resolve(orderId, OrderStatus.COMPLETED, null, Instant.now()) == 0) {
+            return;
+        }
+        PurchaseOrder order = purchaseOrderRepository.findById(orderId).orElseThrow();
+        refundUser(order.getUsername(), order.getAmount(), order.getPhoneNumber());
+        phoneNumberRepository.findByPhoneNumber(order.getPhoneNumber()).ifPresent(phoneNumberRepository::delete);
+    }
 
-        return "Long-term phone number released successfully, funds refunded, and number deleted.";
+    private void failReturn(Long orderId, String reason) {
+        if (purchaseOrderRepository.resolve(orderId, OrderStatus.FAILED, reason, Instant.now()) == 0) {
+            return;
+        }
+        PurchaseOrder order = purchaseOrderRepository.findById(orderId).orElseThrow();
+        phoneNumberRepository.findIdByPhoneNumber(order.getPhoneNumber()).ifPresent(id ->
+                phoneNumberRepository.compareAndSetStatus(id, RETURNING_STATUS, order.getPreviousStatus()));
+        logger.warn("Return of {} failed, number unlocked: {}", order.getPhoneNumber(), reason);
     }
 
     @Transactional
-    public void refundUser(String username, Double amount) {
+    public void refundUser(String username, Double amount, String phoneNumber) {
         if (amount <= 0) {
             logger.warn("Attempt to refund non-positive amount: {}", amount);
             throw new IllegalArgumentException("Refund amount must be positive");
         }
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new DatabaseException("User not found"));
+        double newBalance = balanceService.credit(username, amount, BalanceEntryType.REFUND, phoneNumber);
 
-        user.setBalance(user.getBalance() + amount);
-        userRepository.save(user);
+        logger.info("User {} refunded successfully. Refund amount: {}, New balance: {}", username, amount, newBalance);
+    }
 
-        logger.info("User {} refunded successfully. Refund amount: {}, New balance: {}", username, amount, user.getBalance());
+    /**
+     * Buys a number in three steps: reserve the price in a short transaction, rent the number with no
+     * transaction open, then store it (or give the money back) in a second short transaction.
+     * The price is taken from {@link PricingEngine}; {@code expectedPrice} is what the client was shown,
+     * a purchase is rejected if it is out of date.
+     */
+    public PhoneNumber purchasePhoneNumber(String username, String serviceName, Double expectedPrice, String rentalType) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            PhoneNumber purchased = purchase(username, serviceName, expectedPrice, rentalType);
+            outcome = "success";
+            return purchased;
+        } catch (IllegalArgumentException e) {
+            outcome = "rejected";
+            throw e;
+        } catch (InsufficientBalanceException e) {
+            outcome = "insufficient_balance";
+            throw e;
+        } catch (ApiException e) {
+            outcome = "provider_error";
+            throw e;
+        } finally {
+            // rejected requests may name services that don't exist, keep them out of the tag values
+            sample.stop(Timer.builder("purchases")
+                    .description("Number purchases, from price check to the stored number")
+                    .tag("service", "rejected".equals(outcome) || serviceName == null ? "unknown" : serviceName.toLowerCase())
+                    .tag("rental", LONG_TERM_RENTAL.equalsIgnoreCase(rentalType) ? "long_term" : "short_term")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
     }
 
-    @Transactional
-    public PhoneNumber purchasePhoneNumber(String username, String serviceName, Double price, String rentalType) {
+    private PhoneNumber purchase(String username, String serviceName, Double expectedPrice, String rentalType) {
+        double price = pricingEngine.confirmPrice(serviceName, LONG_TERM_RENTAL.equalsIgnoreCase(rentalType), expectedPrice);
         logger.info("Starting purchase process for user: {}, service: {}, price: {}, rentalType: {}",
                 username, serviceName, price, rentalType);
 
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        logger.info("User found: {}", user);
-
-        if (user.getBalance() < price) {
-            logger.error("Insufficient balance for user: {}", username);
-            throw new RuntimeException("Insufficient balance for user: " + username);
-        }
-
-        String apiUrl = "";
-        UriComponentsBuilder uriBuilder;
+        PurchaseOrder order = transactionTemplate.execute(status ->
+                reservePurchase(username, serviceName, price, rentalType));
 
-        if ("long_term".equalsIgnoreCase(rentalType)) {
-
-            uriBuilder = UriComponentsBuilder.fromHttpUrl(apiUrl)
-                    .queryParam("cmd", "")
-                    .queryParam("user", "")
-                    .queryParam("api_key", "")
-                    .queryParam("service", serviceName)
-                    .queryParam("duration", 30);
-        } else {
-
-            uriBuilder = UriComponentsBuilder.fromHttpUrl(apiUrl)
-                    .queryParam("cmd", "")
-                    .queryParam("user", "")
-                    .queryParam("api_key", "")
-                    .queryParam("service", serviceName);
-        }
-
-        logger.info("Sending request to external API. URL: {}", uriBuilder.toUriString());
-
-        // Выполнение запроса к внешнему API
-        ResponseEntity<Map<String, Object>> response = restTemplate.exchange(
-                uriBuilder.toUriString(),
-                HttpMethod.GET,
-                null,
-                new ParameterizedTypeReference<>() {}
-        );
-
-        Map<String, Object> responseBody = response.getBody();
-        if (responseBody == null || !"ok".equalsIgnoreCase((String) responseBody.get("status"))) {
-            throw new RuntimeException("Failed to purchase phone number: API error");
+        ProviderNumber allocated;
+        try {
+            if (LONG_TERM_RENTAL.equalsIgnoreCase(rentalType)) {
+                allocated = providerClient.rentLongTerm(serviceName, LONG_TERM_DURATION_DAYS);
+            } else {
+                allocated = providerClient.rentShortTerm(serviceName);
+            }
+        } catch (RuntimeException e) {
+            transactionTemplate.executeWithoutResult(status -> failPurchase(order.getId(), e.getMessage()));
+            throw e;
         }
 
-        if ("long_term".equalsIgnoreCase(rentalType)) {
-            Map<String, Object> message = (Map<String, Object>) responseBody.get("message");
-            if (message == null) {
-                throw new RuntimeException("Failed to purchase phone number: No message in response");
-            }
-            return processPhoneDetailsForLongTerm(message, user, serviceName, price);
-        } else {
-            List<Map<String, Object>> messageList = (List<Map<String, Object>>) responseBody.get("message");
-            if (messageList.isEmpty()) {
-                throw new RuntimeException("Failed to purchase phone number: No numbers available");
+        try {
+            if (allocated.mdn() == null || allocated.mdn().isBlank()) {
+                throw new ApiException("Provider rented number " + allocated.id() + " without an MDN");
             }
-            return processPhoneDetails(messageList.get(0), user, serviceName, price);
+            // recorded first, so the recovery job can hand the number back if we never get to confirm
+            transactionTemplate.executeWithoutResult(status -> purchaseOrderRepository.recordAllocation(
+                    order.getId(), allocated.mdn(), allocated.id(), Instant.now()));
+            return transactionTemplate.execute(status -> processPhoneDetails(order.getId(), allocated));
+        } catch (RuntimeException e) {
+            // the number is rented but unusable or could not be stored; hand it back rather than bill for it
+            logger.error("Failed to store purchased number {} for order {}", allocated.mdn(), order.getId(), e);
+            releaseQuietly(allocated.mdn(), allocated.id(), serviceName, rentalType);
+            transactionTemplate.executeWithoutResult(status -> failPurchase(order.getId(), e.getMessage()));
+            throw e;
         }
     }
 
-    private PhoneNumber processPhoneDetailsForLongTerm(Map<String, Object> phoneDetails, User user, String serviceName, Double price) {
-        logger.info("Processing long-term phone details: {}", phoneDetails);
+    private PurchaseOrder reservePurchase(String username, String serviceName, Double price, String rentalType) {
+        PurchaseOrder order = new PurchaseOrder();
+        order.setType(OrderType.PURCHASE);
+        order.setStatus(OrderStatus.PENDING);
+        order.setUsername(username);
+        order.setServiceName(serviceName);
+        order.setRentalType(rentalType);
+        order.setAmount(price);
+        purchaseOrderRepository.save(order);
+
+        double newBalance = balanceService.debit(username, price, BalanceEntryType.PURCHASE, orderReference(order));
+        logger.info("Reserved {} for order {}. New balance: {}", price, order.getId(), newBalance);
+        return order;
+    }
 
-        String phoneNumber = (String) phoneDetails.get("mdn");
-        String externalId = phoneDetails.getOrDefault("id", "N/A").toString();
-        String status = "active";
+    private PhoneNumber processPhoneDetails(Long orderId, ProviderNumber allocated) {
+        logger.info("Processing phone details: {}", allocated);
 
-        updateUserBalance(user, price);
+        // loses against a recovery run that refunded the order meanwhile; the caller then releases the number
+        if (purchaseOrderRepository.resolve(orderId, OrderStatus.COMPLETED, null, Instant.now()) == 0) {
+            throw new IllegalStateException("Order " + orderId + " was already resolved");
+        }
+        PurchaseOrder order = purchaseOrderRepository.findById(orderId).orElseThrow();
+        Long userId = userRepository.findIdByUsername(order.getUsername())
+                .orElseThrow(() -> new RuntimeException("User not found"));
 
         PhoneNumber phoneNumberEntity = new PhoneNumber();
-        phoneNumberEntity.setPhoneNumber(phoneNumber);
-        phoneNumberEntity.setExternalId(externalId);
-        phoneNumberEntity.setServiceName(serviceName);
-        phoneNumberEntity.setStatus(status);
-        phoneNumberEntity.setPrice(price);
-        phoneNumberEntity.setUser(user);
-
-        if (phoneDetails.containsKey("expires")) {
-            String expirationString = (String) phoneDetails.get("expires");
-            LocalDateTime expirationDate = LocalDateTime.parse(expirationString,
-                    DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-            phoneNumberEntity.setExpires(expirationDate);
-        }
+        phoneNumberEntity.setPhoneNumber(allocated.mdn());
+        phoneNumberEntity.setExternalId(allocated.id());
+        phoneNumberEntity.setRentalType(LONG_TERM_RENTAL.equalsIgnoreCase(order.getRentalType())
+                ? LONG_TERM_RENTAL : SHORT_TERM_RENTAL);
+        phoneNumberEntity.setServiceName(order.getServiceName());
+        phoneNumberEntity.setStatus("active");
+        phoneNumberEntity.setPrice(order.getAmount());
+        phoneNumberEntity.setUser(userRepository.getReferenceById(userId));
+        phoneNumberEntity.setExpires(allocated.expires() != null
+                ? allocated.expires() : defaultExpiry(phoneNumberEntity.getRentalType()));
 
         return phoneNumberRepository.save(phoneNumberEntity);
     }
 
-    private PhoneNumber processPhoneDetails(Map<String, Object> phoneDetails, User user, String serviceName, Double price) {
-        logger.info("Processing phone details: {}", phoneDetails);
+    /**
+     * Refunds the order unless it was already resolved; returns whether this call resolved it.
+     */
+    private boolean failPurchase(Long orderId, String reason) {
+        if (purchaseOrderRepository.resolve(orderId, OrderStatus.FAILED, reason, Instant.now()) == 0) {
+            return false;
+        }
+        PurchaseOrder order = purchaseOrderRepository.findById(orderId).orElseThrow();
+        double newBalance = balanceService.credit(order.getUsername(), order.getAmount(),
+                BalanceEntryType.REFUND, orderReference(order));
+        logger.warn("Purchase order {} failed, {} returned to {} (balance {}): {}",
+                order.getId(), order.getAmount(), order.getUsername(), newBalance, reason);
+        return true;
+    }
 
-        String phoneNumber = (String) phoneDetails.get("mdn");
-        String externalId = phoneDetails.getOrDefault("id", "N/A").toString();
-        String status = "active";
+    private static LocalDateTime defaultExpiry(String rentalType) {
+        LocalDateTime now = LocalDateTime.now();
+        return LONG_TERM_RENTAL.equals(rentalType)
+                ? now.plusDays(LONG_TERM_DURATION_DAYS) : now.plusMinutes(SHORT_TERM_DEFAULT_MINUTES);
+    }
 
-        updateUserBalance(user, price);
+    private void releaseQuietly(String mdn, String externalId, String serviceName, String rentalType) {
+        try {
+            if (LONG_TERM_RENTAL.equalsIgnoreCase(rentalType)) {
+                if (mdn == null || mdn.isBlank()) {
+                    logger.error("Cannot hand back long-term rental {} without an MDN", externalId);
+                    return;
+                }
+                providerClient.releaseLongTerm(mdn, serviceName);
+            } else {
+                providerClient.reject(externalId);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Could not hand back number {} to the provider: {}", mdn, e.getMessage());
+        }
+    }
 
-        PhoneNumber phoneNumberEntity = new PhoneNumber();
-        phoneNumberEntity.setPhoneNumber(phoneNumber);
-        phoneNumberEntity.setExternalId(externalId);
-        phoneNumberEntity.setServiceName(serviceName);
-        phoneNumberEntity.setStatus(status);
-        phoneNumberEntity.setPrice(price);
-        phoneNumberEntity.setUser(user);
-
-        if (phoneDetails.containsKey("till_expiration")) {
-            Integer tillExpiration = (Integer) phoneDetails.get("till_expiration");
-            phoneNumberEntity.setExpires(LocalDateTime.now().plusSeconds(tillExpiration));
+    /**
+     * Resolves orders left {@link OrderStatus#PENDING} by a crash or restart between the provider call and
+     * the confirming transaction. Unconfirmed purchases are refunded, and a number the provider already
+     * rented for them is handed back; interrupted returns are retried once against the provider and
+     * otherwise unlocked.
+     */
+    @Scheduled(fixedDelayString = "${orders.recovery.interval-ms:60000}")
+    public void recoverStaleOrders() {
+        Instant cutoff = Instant.now().minus(staleOrderAge);
+        List<PurchaseOrder> stale = purchaseOrderRepository.findByStatusAndUpdatedAtBeforeOrderByIdAsc(
+                OrderStatus.PENDING, cutoff, PageRequest.of(0, RECOVERY_BATCH_SIZE));
+        for (PurchaseOrder order : stale) {
+            try {
+                if (order.getType() == OrderType.PURCHASE) {
+                    recoverPurchase(order, cutoff);
+                } else {
+                    recoverReturn(order);
+                }
+            } catch (RuntimeException e) {
+                logger.error("Failed to recover order {}: {}", order.getId(), e.getMessage());
+            }
+        }
+        if (!stale.isEmpty()) {
+            logger.info("Recovered {} stale orders", stale.size());
         }
+    }
 
-        return phoneNumberRepository.save(phoneNumberEntity);
+    private void recoverPurchase(PurchaseOrder order, Instant cutoff) {
+        Boolean refunded = transactionTemplate.execute(status ->
+                failPurchase(order.getId(), "Not confirmed before " + cutoff));
+        if (Boolean.TRUE.equals(refunded) && order.getExternalId() != null) {
+            logger.warn("Handing back number {} of unconfirmed order {}", order.getPhoneNumber(), order.getId());
+            releaseQuietly(order.getPhoneNumber(), order.getExternalId(), order.getServiceName(), order.getRentalType());
+        }
     }
 
-    @Transactional
-    public void updateUserBalance(User user, Double amount) {
-        logger.info("Updating balance for user: {}. Current balance: {}, amount to deduct: {}",
-                user.getUsername(), user.getBalance(), amount);
-
-        if (user.getBalance() < amount) {
-            logger.error("Insufficient balance. User: {}, current balance: {}, required: {}",
-                    user.getUsername(), user.getBalance(), amount);
-            throw new RuntimeException("Insufficient balance for user: " + user.getUsername());
+    private void recoverReturn(PurchaseOrder order) {
+        try {
+            if (LONG_TERM_RENTAL.equals(order.getRentalType())) {
+                providerClient.releaseLongTerm(order.getPhoneNumber(), order.getServiceName());
+            } else {
+                providerClient.reject(order.getExternalId());
+            }
+        } catch (RuntimeException e) {
+            transactionTemplate.executeWithoutResult(status -> failReturn(order.getId(), e.getMessage()));
+            return;
         }
+        transactionTemplate.executeWithoutResult(status -> completeReturn(order.getId()));
+    }
 
-        user.setBalance(user.getBalance() - amount);
-        userRepository.save(user);
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillRentalTypes() {
+        Integer updated = transactionTemplate.execute(status ->
+                phoneNumberRepository.backfillRentalTypes(LONG_TERM_RENTAL, SHORT_TERM_RENTAL));
+        if (updated != null && updated > 0) {
+            logger.info("Stored the rental type of {} numbers bought before it was recorded", updated);
+        }
+    }
 
-        logger.info("Balance updated successfully. New balance: {}", user.getBalance());
+    private static String orderReference(PurchaseOrder order) {
+        return "order:" + order.getId();
     }
 
-    public List<PhoneNumber> fetchAvailableNumbers(String serviceName) {
-        return phoneNumberRepository.findByServiceName(serviceName)
-                .stream()
-                .filter(phoneNumber -> "AVAILABLE".equalsIgnoreCase(phoneNumber.getStatus()))
+    public List<PhoneNumberDTO> fetchAvailableNumbers(String serviceName) {
+        return phoneNumberRepository.findViewsByServiceNameAndStatusIn(serviceName, AVAILABLE_STATUSES).stream()
+                .map(PhoneNumberService::toDTO)
                 .toList();
     }
 
@@ -347,12 +410,10 @@ public class PhoneNumberService {
     }
 
     public List<PhoneNumber> getUserNumbers(String username) {
-        User user = userRepository.findByUsername(username)
+        Long userId = userRepository.findIdByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
-        return phoneNumberRepository.findAll().stream()
-                .filter(number -> number.getUser() != null && number.getUser().equals(user))
-                .collect(Collectors.toList());
+        return phoneNumberRepository.findByUserId(userId);
     }
 
     public void assignNumberToUser(Long phoneNumberId, String username) {
@@ -368,27 +429,27 @@ public class PhoneNumberService {
     }
 
     public void transferNumberByUsername(String donorUsername, String recipientUsername, String phoneNumberValue) {
-        User donor = userRepository.findByUsername(donorUsername)
-                .orElseThrow(() -> new RuntimeException("Donor not found with username: " + donorUsername));
+        if (userRepository.findIdByUsername(donorUsername).isEmpty()) {
+            throw new RuntimeException("Donor not found with username: " + donorUsername);
+        }
 
         // Проверяем, существует ли пользователь-получатель
-        User recipient = userRepository.findByUsername(recipientUsername)
+        Long recipientId = userRepository.findIdByUsername(recipientUsername)
                 .orElseThrow(() -> new RuntimeException("Recipient not found with username: " + recipientUsername));
 
-        PhoneNumber phoneNumber = phoneNumberRepository.findByUser(donor).stream()
-                .filter(number -> number.getPhoneNumber().equals(phoneNumberValue))
-                .findFirst()
+        PhoneNumber phoneNumber = phoneNumberRepository.findByPhoneNumberAndUserUsername(phoneNumberValue, donorUsername)
                 .orElseThrow(() -> new RuntimeException("Phone number not found or does not belong to the donor"));
 
-        phoneNumber.setUser(recipient);
+        phoneNumber.setUser(userRepository.getReferenceById(recipientId));
         phoneNumberRepository.save(phoneNumber);
     }
 
     public List<PhoneNumberDTO> getPhoneNumbersByUsername(String username) {
-        User user = userRepository.findByUsername(username)
+        Long userId = userRepository.findIdByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
-        return phoneNumberRepository.findByUser(user).stream()
+        // no ids on the user's own listing
+        return phoneNumberRepository.findViewsByUserId(userId).stream()
                 .map(phone -> new PhoneNumberDTO(
                         null,
                         phone.getPhoneNumber(),
@@ -400,10 +461,17 @@ public class PhoneNumberService {
     }
 
 
-    public List<PhoneNumber> getNumbersByOwner(String username) {
-        User owner = userRepository.findByUsername(username)
+    public List<PhoneNumberDTO> getNumbersByOwner(String username) {
+        Long ownerId = userRepository.findIdByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found: " + username));
-        return phoneNumberRepository.findByUser(owner);
+        return phoneNumberRepository.findViewsByUserId(ownerId).stream()
+                .map(PhoneNumberService::toDTO)
+                .toList();
+    }
+
+    private static PhoneNumberDTO toDTO(PhoneNumberView phone) {
+        return new PhoneNumberDTO(phone.getId(), phone.getPhoneNumber(), phone.getServiceName(),
+                phone.getPrice(), phone.getStatus());
     }
 
     public void transferNumber(Long numberId, String recipientUsername) {
@@ -418,8 +486,8 @@ public class PhoneNumberService {
         phoneNumberRepository.save(phoneNumber);
     }
 
-    public List<PhoneNumber> getPhoneNumbersByUserId(Long userId) {
-        return phoneNumberRepository.findByUserId(userId);
+    public List<PhoneNumberView> getPhoneNumbersByUserId(Long userId) {
+        return phoneNumberRepository.findViewsByUserId(userId);
     }
 
 
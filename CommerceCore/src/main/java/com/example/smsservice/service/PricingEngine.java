@@ -0,0 +1,189 @@
+package com.example.smsservice.service;
+
+import com.example.smsservice.provider.ProviderCommand;
+import com.example.smsservice.service.ServiceCatalogCache.CatalogSnapshot;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Final prices (provider catalog price plus markup) kept in an immutable table that is swapped atomically.
+ * The table is rebuilt when the markup changes and, lazily, when either catalog snapshot has a new ETag;
+ * otherwise a lookup is a single map access.
+ * <p>
+ * The markup is a percentage on top of the provider price.
+ */
+@Service
+public class PricingEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(PricingEngine.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final double PRICE_TOLERANCE = 0.005;
+
+    private final MarkupService markupService;
+    private final ServiceCatalogCache serviceCatalogCache;
+    private final AtomicReference<PriceTable> table = new AtomicReference<>();
+
+    public PricingEngine(MarkupService markupService, ServiceCatalogCache serviceCatalogCache) {
+        this.markupService = markupService;
+        this.serviceCatalogCache = serviceCatalogCache;
+    }
+
+    /**
+     * Price the user pays for {@code serviceName}. Throws {@link IllegalArgumentException} if the provider
+     * does not offer the service for that rental type.
+     */
+    public double priceFor(String serviceName, boolean longTerm) {
+        ServicePrice price = current().prices().get(key(serviceName));
+        Double value = price == null ? null : (longTerm ? price.longTerm() : price.shortTerm());
+        if (value == null) {
+            throw new IllegalArgumentException("Service is not available: " + serviceName);
+        }
+        return value;
+    }
+
+    /**
+     * Like {@link #priceFor}, but also rejects a purchase whose client-side price is out of date.
+     */
+    public double confirmPrice(String serviceName, boolean longTerm, Double expectedPrice) {
+        double price = priceFor(serviceName, longTerm);
+        if (expectedPrice != null && Math.abs(expectedPrice - price) > PRICE_TOLERANCE) {
+            throw new IllegalArgumentException("Price has changed, current price is " + price);
+        }
+        return price;
+    }
+
+    public PriceTable current() {
+        CatalogSnapshot shortTerm = serviceCatalogCache.get(ProviderCommand.SHORT_TERM_SERVICES);
+        CatalogSnapshot longTerm = serviceCatalogCache.get(ProviderCommand.LONG_TERM_SERVICES);
+        double markup = markupService.getMarkupValue();
+        PriceTable current = table.get();
+        if (current != null && current.builtFrom(markup, shortTerm, longTerm)) {
+            return current;
+        }
+        PriceTable rebuilt = build(markup, shortTerm, longTerm);
+        // another thread may have rebuilt from the same inputs meanwhile, either copy is correct
+        table.set(rebuilt);
+        return rebuilt;
+    }
+
+    /**
+     * Rebuilds the table with the current markup; called after the markup was changed.
+     */
+    public void refresh() {
+        PriceTable current = table.get();
+        if (current == null) {
+            return;
+        }
+        table.set(build(markupService.getMarkupValue(), current.shortTermSource(), current.longTermSource()));
+    }
+
+    private static PriceTable build(double markup, CatalogSnapshot shortTerm, CatalogSnapshot longTerm) {
+        Map<String, ServicePrice> prices = new TreeMap<>();
+        readCatalog(shortTerm, "price", markup, prices, false);
+        readCatalog(longTerm, "ltr_price", markup, prices, true);
+
+        byte[] json = toJson(markup, prices);
+        PriceTable table = new PriceTable(markup, Map.copyOf(prices), json, etag(json), shortTerm, longTerm, Instant.now());
+        logger.info("Price table rebuilt: {} services, markup {}%", prices.size(), markup);
+        return table;
+    }
+
+    private static void readCatalog(CatalogSnapshot catalog, String priceField, double markup,
+                                    Map<String, ServicePrice> prices, boolean longTerm) {
+        JsonNode root;
+        try {
+            root = OBJECT_MAPPER.readTree(catalog.json());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        JsonNode services = root.has("message") ? root.get("message") : root;
+        for (JsonNode service : services) {
+            String name = service.path("name").asText(null);
+            JsonNode basePrice = service.hasNonNull(priceField) ? service.get(priceField) : service.get("price");
+            if (name == null || basePrice == null || basePrice.isNull()) {
+                continue;
+            }
+            double finalPrice = applyMarkup(basePrice.asDouble(), markup);
+            prices.merge(key(name),
+                    longTerm ? new ServicePrice(name, null, finalPrice) : new ServicePrice(name, finalPrice, null),
+                    (existing, added) -> new ServicePrice(existing.name(),
+                            existing.shortTerm() != null ? existing.shortTerm() : added.shortTerm(),
+                            existing.longTerm() != null ? existing.longTerm() : added.longTerm()));
+        }
+    }
+
+    private static double applyMarkup(double basePrice, double markup) {
+        return BigDecimal.valueOf(basePrice * (1 + markup / 100)).setScale(2, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    private static byte[] toJson(double markup, Map<String, ServicePrice> prices) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 + prices.size() * 64);
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(buffer)) {
+            json.writeStartObject();
+            json.writeNumberField("markup", markup);
+            json.writeArrayFieldStart("services");
+            for (ServicePrice price : prices.values()) {
+                json.writeStartObject();
+                json.writeStringField("name", price.name());
+                if (price.shortTerm() != null) {
+                    json.writeNumberField("shortTerm", price.shortTerm());
+                }
+                if (price.longTerm() != null) {
+                    json.writeNumberField("longTerm", price.longTerm());
+                }
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static String etag(byte[] json) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(json);
+            return "\"" + HexFormat.of().formatHex(hash, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String key(String serviceName) {
+        return serviceName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public record ServicePrice(String name, Double shortTerm, Double longTerm) {
+    }
+
+    public record PriceTable(double markup, Map<String, ServicePrice> prices, byte[] json, String etag,
+                             CatalogSnapshot shortTermSource, CatalogSnapshot longTermSource, Instant builtAt) {
+
+        boolean builtFrom(double markup, CatalogSnapshot shortTerm, CatalogSnapshot longTerm) {
+            return this.markup == markup
+                    && shortTermSource.etag().equals(shortTerm.etag())
+                    && longTermSource.etag().equals(longTerm.etag());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.smsservice.service;
+
+import com.example.smsservice.provider.ProviderClient;
+import com.example.smsservice.provider.ProviderCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the provider's service catalogs in memory as ready-to-write JSON bytes (plain and gzip) with an
+ * ETag. Entries are refreshed in the background; stale entries keep being served while a refresh is in
+ * flight or the provider is down.
+ */
+@Component
+public class ServiceCatalogCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServiceCatalogCache.class);
+    private static final List<ProviderCommand> CATALOGS =
+            List.of(ProviderCommand.LONG_TERM_SERVICES, ProviderCommand.SHORT_TERM_SERVICES);
+
+    private final ProviderClient providerClient;
+    private final TaskExecutor taskExecutor;
+    private final Duration maxAge;
+
+    private final Map<ProviderCommand, AtomicReference<CatalogSnapshot>> snapshots = new EnumMap<>(ProviderCommand.class);
+    private final Map<ProviderCommand, AtomicBoolean> refreshing = new EnumMap<>(ProviderCommand.class);
+
+    public ServiceCatalogCache(ProviderClient providerClient, TaskExecutor taskExecutor,
+                               @Value("${catalog.max-age-ms:300000}") long maxAgeMs) {
+        this.providerClient = providerClient;
+        this.taskExecutor = taskExecutor;
+        this.maxAge = Duration.ofMillis(maxAgeMs);
+        for (ProviderCommand catalog : CATALOGS) {
+            snapshots.put(catalog, new AtomicReference<>());
+            refreshing.put(catalog, new AtomicBoolean());
+        }
+    }
+
+    /**
+     * Returns the cached catalog, loading it synchronously only if nothing has been cached yet.
+     */
+    public CatalogSnapshot get(ProviderCommand catalog) {
+        CatalogSnapshot snapshot = reference(catalog).get();
+        if (snapshot == null) {
+            return refresh(catalog);
+        }
+        if (snapshot.isOlderThan(maxAge)) {
+            refreshAsync(catalog);
+        }
+        return snapshot;
+    }
+
+    @Scheduled(fixedDelayString = "${catalog.refresh-interval-ms:240000}", initialDelay = 0)
+    public void refreshAll() {
+        for (ProviderCommand catalog : CATALOGS) {
+            try {
+                refresh(catalog);
+            } catch (RuntimeException e) {
+                logger.warn("Background refresh of {} failed, keeping last good copy: {}", catalog, e.getMessage());
+            }
+        }
+    }
+
+    private void refreshAsync(ProviderCommand catalog) {
+        AtomicBoolean inFlight = refreshing.get(catalog);
+        if (!inFlight.compareAndSet(false, true)) {
+            return;
+        }
+        taskExecutor.execute(() -> {
+            try {
+                refresh(catalog);
+            } catch (RuntimeException e) {
+                logger.warn("Revalidation of {} failed, serving stale copy: {}", catalog, e.getMessage());
+            } finally {
+                inFlight.set(false);
+            }
+        });
+    }
+
+    private CatalogSnapshot refresh(ProviderCommand catalog) {
+        byte[] json = providerClient.fetchCatalog(catalog);
+        CatalogSnapshot snapshot = new CatalogSnapshot(json, gzip(json), etag(json), Instant.now());
+        CatalogSnapshot previous = reference(catalog).getAndSet(snapshot);
+        if (previous == null || !previous.etag().equals(snapshot.etag())) {
+            logger.info("Catalog {} refreshed ({} bytes, etag {})", catalog, json.length, snapshot.etag());
+        }
+        return snapshot;
+    }
+
+    private AtomicReference<CatalogSnapshot> reference(ProviderCommand catalog) {
+        AtomicReference<CatalogSnapshot> reference = snapshots.get(catalog);
+        if (reference == null) {
+            throw new IllegalArgumentException("Not a catalog command: " + catalog);
+        }
+        return reference;
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, json.length / 4));
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static String etag(byte[] json) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(json);
+            return "\"" + HexFormat.of().formatHex(hash, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public record CatalogSnapshot(byte[] json, byte[] gzip, String etag, Instant fetchedAt) {
+
+        boolean isOlderThan(Duration maxAge) {
+            return fetchedAt.plus(maxAge).isBefore(Instant.now());
+        }
+    }
+}
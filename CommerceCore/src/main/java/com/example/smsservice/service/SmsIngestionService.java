@@ -0,0 +1,171 @@
+package com.example.smsservice.service;
+
+import com.example.smsservice.config.WorkerExecutors;
+import com.example.smsservice.dto.SMSNotificationDTO;
+import com.example.smsservice.model.SMSMessage;
+import com.example.smsservice.provider.ProviderClient;
+import com.example.smsservice.provider.ProviderSms;
+import com.example.smsservice.repository.PhoneNumberRepository;
+import com.example.smsservice.repository.PhoneNumberRepository.PolledNumberView;
+import com.example.smsservice.repository.SMSMessageRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Polls the provider for SMS of every rented number and stores new messages in {@code SMS_MESSAGES},
+ * so client reads are served from the database. Provider calls run outside of any transaction; each
+ * number's new messages are inserted in their own short transaction.
+ */
+@Service
+public class SmsIngestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SmsIngestionService.class);
+
+    public static final List<String> POLLED_STATUSES = List.of("active", "ASSIGNED");
+
+    private final PhoneNumberRepository phoneNumberRepository;
+    private final SMSMessageRepository smsMessageRepository;
+    private final ProviderClient providerClient;
+    private final SmsStreamRegistry smsStreamRegistry;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService pollExecutor;
+    private final int batchSize;
+
+    public SmsIngestionService(PhoneNumberRepository phoneNumberRepository,
+                               SMSMessageRepository smsMessageRepository,
+                               ProviderClient providerClient,
+                               SmsStreamRegistry smsStreamRegistry,
+                               PlatformTransactionManager transactionManager,
+                               WorkerExecutors workerExecutors,
+                               @Value("${sms.ingestion.batch-size:50}") int batchSize,
+                               @Value("${sms.ingestion.parallelism:4}") int parallelism) {
+        this.phoneNumberRepository = phoneNumberRepository;
+        this.smsMessageRepository = smsMessageRepository;
+        this.providerClient = providerClient;
+        this.smsStreamRegistry = smsStreamRegistry;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.pollExecutor = workerExecutors.providerBound("sms-ingest-", parallelism);
+    }
+
+    @Scheduled(fixedDelayString = "${sms.ingestion.interval-ms:5000}")
+    public void ingest() {
+        long afterId = 0;
+        int polled = 0;
+        int stored = 0;
+        List<PolledNumberView> batch;
+        do {
+            batch = phoneNumberRepository.findPolledNumbers(POLLED_STATUSES, afterId, PageRequest.of(0, batchSize));
+            List<CompletableFuture<Integer>> results = new ArrayList<>(batch.size());
+            for (PolledNumberView number : batch) {
+                results.add(CompletableFuture.supplyAsync(() -> ingestNumber(number), pollExecutor));
+            }
+            for (CompletableFuture<Integer> result : results) {
+                stored += result.join();
+            }
+            polled += batch.size();
+            if (!batch.isEmpty()) {
+                afterId = batch.get(batch.size() - 1).getId();
+            }
+        } while (batch.size() == batchSize);
+
+        if (stored > 0) {
+            logger.info("SMS ingestion polled {} numbers, stored {} new messages", polled, stored);
+        }
+    }
+
+    private int ingestNumber(PolledNumberView number) {
+        List<ProviderSms> received;
+        try {
+            received = providerClient.readSms(number.getPhoneNumber());
+        } catch (RuntimeException e) {
+            logger.warn("Failed to read SMS for {}: {}", number.getPhoneNumber(), e.getMessage());
+            return 0;
+        }
+        if (received.isEmpty()) {
+            return 0;
+        }
+
+        List<SMSMessage> inserted;
+        try {
+            inserted = transactionTemplate.execute(status -> store(number.getId(), received));
+        } catch (DataIntegrityViolationException e) {
+            // a concurrent pass stored the same messages first, the next pass picks up anything left
+            logger.debug("Duplicate SMS skipped for {}", number.getPhoneNumber());
+            return 0;
+        }
+        if (inserted == null || inserted.isEmpty()) {
+            return 0;
+        }
+
+        // pushed only after the commit, so a client reconnecting with Last-Event-ID can always replay it
+        List<SMSNotificationDTO> notifications = new ArrayList<>(inserted.size());
+        for (SMSMessage message : inserted) {
+            notifications.add(new SMSNotificationDTO(message.getId(), number.getPhoneNumber(),
+                    message.getDateTime(), message.getSender(), message.getMessage()));
+        }
+        smsStreamRegistry.publish(number.getUsername(), notifications);
+        return inserted.size();
+    }
+
+    private List<SMSMessage> store(Long phoneNumberId, List<ProviderSms> received) {
+        Set<String> known = new HashSet<>(smsMessageRepository.findFingerprints(phoneNumberId));
+        Instant now = Instant.now();
+        List<SMSMessage> fresh = new ArrayList<>();
+        for (ProviderSms sms : received) {
+            String fingerprint = fingerprint(sms);
+            if (!known.add(fingerprint)) {
+                continue;
+            }
+            SMSMessage message = new SMSMessage();
+            message.setPhoneNumber(phoneNumberRepository.getReferenceById(phoneNumberId));
+            message.setDateTime(sms.dateTime());
+            message.setSender(sms.from());
+            message.setMessage(sms.reply());
+            message.setStatus("received");
+            message.setFingerprint(fingerprint);
+            message.setReceivedAt(now);
+            fresh.add(message);
+        }
+        return smsMessageRepository.saveAll(fresh);
+    }
+
+    private static String fingerprint(ProviderSms sms) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(sms.dateTime()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(sms.from()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(sms.reply()).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pollExecutor.shutdownNow();
+    }
+}
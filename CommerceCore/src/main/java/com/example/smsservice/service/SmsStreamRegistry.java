@@ -0,0 +1,123 @@
+package com.example.smsservice.service;
+
+import com.example.smsservice.dto.SMSNotificationDTO;
+import com.example.smsservice.repository.SMSMessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Open SSE connections keyed by username. New SMS are pushed to the owner's connections only, so
+ * fan-out costs one map lookup per message regardless of how many clients are connected.
+ */
+@Component
+public class SmsStreamRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(SmsStreamRegistry.class);
+    private static final String EVENT_NAME = "sms";
+    private static final int REPLAY_LIMIT = 200;
+
+    private final SMSMessageRepository smsMessageRepository;
+    private final long timeoutMs;
+    private final Map<String, Set<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    public SmsStreamRegistry(SMSMessageRepository smsMessageRepository,
+                             @Value("${sms.stream.timeout-ms:1800000}") long timeoutMs) {
+        this.smsMessageRepository = smsMessageRepository;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Opens a stream for the user. A reconnecting client passes its {@code Last-Event-ID} and first gets
+     * every stored message newer than it; a fresh connection only receives messages arriving from now on.
+     */
+    public SseEmitter register(String username, Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Set<SseEmitter> userEmitters = emitters.computeIfAbsent(username, key -> new CopyOnWriteArraySet<>());
+        userEmitters.add(emitter);
+
+        Runnable remove = () -> unregister(username, emitter);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(error -> remove.run());
+
+        if (lastEventId != null) {
+            List<SMSNotificationDTO> missed = smsMessageRepository.findNotificationsForUserSince(
+                    username, lastEventId, PageRequest.of(0, REPLAY_LIMIT));
+            for (SMSNotificationDTO message : missed) {
+                if (!send(emitter, message)) {
+                    break;
+                }
+            }
+        }
+        return emitter;
+    }
+
+    public void publish(String username, List<SMSNotificationDTO> messages) {
+        if (username == null) {
+            return;
+        }
+        Set<SseEmitter> userEmitters = emitters.get(username);
+        if (userEmitters == null) {
+            return;
+        }
+        for (SseEmitter emitter : userEmitters) {
+            for (SMSNotificationDTO message : messages) {
+                if (!send(emitter, message)) {
+                    unregister(username, emitter);
+                    break;
+                }
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${sms.stream.heartbeat-ms:15000}")
+    public void heartbeat() {
+        emitters.forEach((username, userEmitters) -> {
+            for (SseEmitter emitter : userEmitters) {
+                try {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                } catch (IOException | IllegalStateException e) {
+                    unregister(username, emitter);
+                }
+            }
+        });
+    }
+
+    public int connectionCount() {
+        return emitters.values().stream().mapToInt(Set::size).sum();
+    }
+
+    private boolean send(SseEmitter emitter, SMSNotificationDTO message) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .id(String.valueOf(message.getId()))
+                    .name(EVENT_NAME)
+                    .data(message, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            logger.debug("SSE send failed, dropping connection: {}", e.getMessage());
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private void unregister(String username, SseEmitter emitter) {
+        emitters.computeIfPresent(username, (key, userEmitters) -> {
+            userEmitters.remove(emitter);
+            return userEmitters.isEmpty() ? null : userEmitters;
+        });
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.smsservice.service;
+
+import com.example.smsservice.repository.UserRepository;
+import com.example.smsservice.util.JwtProperties;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory table of the current token version per username, used by the stateless authentication
+ * mode to reject revoked tokens without a database round-trip. Kept up to date by local bumps and an
+ * incremental refresh from the {@code users} table; a periodic full reload drops users deleted elsewhere.
+ * Each entry also holds the user id, so tokens of a deleted account stay invalid when the same username
+ * is registered again and starts over at version 0.
+ */
+@Component
+public class TokenVersionRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenVersionRegistry.class);
+
+    // marks a username known not to exist, so forged or stale tokens don't reach the database on every request
+    private static final Version UNKNOWN_USER = new Version(-1, -1);
+
+    // overlap between incremental refreshes, covers clock skew between the app and the database
+    private static final Duration REFRESH_OVERLAP = Duration.ofSeconds(5);
+
+    private final UserRepository userRepository;
+    private final JwtProperties jwtProperties;
+    private final Map<String, Version> versions = new ConcurrentHashMap<>();
+
+    private volatile Instant lastRefresh = Instant.EPOCH;
+
+    public TokenVersionRegistry(UserRepository userRepository, JwtProperties jwtProperties) {
+        this.userRepository = userRepository;
+        this.jwtProperties = jwtProperties;
+    }
+
+    @PostConstruct
+    void init() {
+        if (jwtProperties.isStateless()) {
+            reload();
+        }
+    }
+
+    /**
+     * Returns the user id and current token version of the user, or {@code null} if the user does not exist.
+     */
+    public Version currentVersion(String username) {
+        Version version = versions.get(username);
+        if (version == null) {
+            // loaded outside the map, computeIfAbsent would hold the bin lock (and pin a virtual thread)
+            // for the whole query
+            Version loaded = userRepository.findTokenVersionByUsername(username)
+                    .map(TokenVersionRegistry::toVersion)
+                    .orElse(UNKNOWN_USER);
+            Version raced = versions.putIfAbsent(username, loaded);
+            version = raced != null ? raced : loaded;
+        }
+        return version == UNKNOWN_USER ? null : version;
+    }
+
+    public boolean isCurrent(String username, Long userId, int tokenVersion) {
+        Version current = currentVersion(username);
+        return current != null && userId != null && current.userId() == userId && current.version() == tokenVersion;
+    }
+
+    public void update(String username, long userId, int tokenVersion) {
+        // versions of one account only move up; a different id is a new account under the same name
+        versions.merge(username, new Version(userId, tokenVersion), (old, updated) ->
+                old.userId() == updated.userId() && old.version() > updated.version() ? old : updated);
+    }
+
+    public void remove(String username) {
+        versions.put(username, UNKNOWN_USER);
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.token-version.refresh-interval-ms:30000}")
+    public void refreshChanged() {
+        if (!jwtProperties.isStateless()) {
+            return;
+        }
+        Instant startedAt = Instant.now();
+        List<UserRepository.TokenVersionView> changed =
+                userRepository.findTokenVersionsChangedSince(lastRefresh.minus(REFRESH_OVERLAP));
+        changed.forEach(view -> versions.put(view.getUsername(), toVersion(view)));
+        lastRefresh = startedAt;
+        if (!changed.isEmpty()) {
+            logger.debug("Token version table refreshed, {} changed users", changed.size());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.token-version.full-reload-interval-ms:3600000}",
+            initialDelayString = "${jwt.token-version.full-reload-interval-ms:3600000}")
+    public void reloadAll() {
+        if (jwtProperties.isStateless()) {
+            reload();
+        }
+    }
+
+    private void reload() {
+        Instant startedAt = Instant.now();
+        Map<String, Version> loaded = new ConcurrentHashMap<>();
+        userRepository.findAllTokenVersions().forEach(view -> loaded.put(view.getUsername(), toVersion(view)));
+        versions.keySet().retainAll(loaded.keySet());
+        versions.putAll(loaded);
+        lastRefresh = startedAt;
+        logger.info("Token version table loaded with {} users", loaded.size());
+    }
+
+    private static Version toVersion(UserRepository.TokenVersionView view) {
+        return new Version(view.getId(), view.getTokenVersion());
+    }
+
+    public record Version(long userId, int version) {
+    }
+}
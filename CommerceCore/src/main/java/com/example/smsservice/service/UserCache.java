@@ -0,0 +1,84 @@
+package com.example.smsservice.service;
+
+import com.example.smsservice.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Bounded, TTL-evicting cache of {@link CachedUser} snapshots keyed by username. Sits in front of
+ * {@link CustomUserDetailsService} and {@link UserService#findCachedUser} so that authenticated
+ * requests don't hit the database on every call.
+ * Anything that changes a cached field of a user row must call {@link #evict(String)}.
+ */
+@Component
+public class UserCache {
+
+    private final Cache<String, CachedUser> users;
+
+    public UserCache(@Value("${cache.users.maximum-size:10000}") long maximumSize,
+                     @Value("${cache.users.ttl-seconds:300}") long ttlSeconds,
+                     MeterRegistry meterRegistry) {
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
+    }
+
+    /**
+     * Returns the cached snapshot or loads the user with {@code loader}. A {@code null} result is not cached.
+     */
+    public CachedUser get(String username, Function<String, User> loader) {
+        return users.get(username, key -> {
+            User user = loader.apply(key);
+            return user == null ? null : CachedUser.of(user);
+        });
+    }
+
+    /**
+     * Evicts immediately and, inside a transaction, once more after completion so that a
+     * concurrent reader can't re-cache the pre-commit row.
+     */
+    public void evict(String username) {
+        if (username == null) {
+            return;
+        }
+        users.invalidate(username);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    users.invalidate(username);
+                }
+            });
+        }
+    }
+
+    public void evictAll() {
+        users.invalidateAll();
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = users.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", users.estimatedSize());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        return result;
+    }
+}
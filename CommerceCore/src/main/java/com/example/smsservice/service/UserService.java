@@ -1,16 +1,25 @@
 package com.example.smsservice.service;
 
+import com.example.smsservice.dto.UserSummaryDTO;
 import com.example.smsservice.model.PasswordResetToken;
 import com.example.smsservice.model.Role;
 import com.example.smsservice.model.User;
 import com.example.smsservice.repository.PasswordResetTokenRepository;
 import com.example.smsservice.repository.UserRepository;
+import com.example.smsservice.repository.UserRepository.UserNumberRow;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
@@ -18,16 +27,27 @@ import java.util.UUID;
 @Service
 public class UserService  {
 
+    private static final Logger logger = LoggerFactory.getLogger(UserService.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int EXPORT_CHUNK_SIZE = 500;
+
     private final UserRepository userRepository;
     @Qualifier("customPasswordEncoder")
     private final PasswordEncoder passwordEncoder;
     private final PasswordResetTokenRepository passwordResetTokenRepository;
+    private final UserCache userCache;
+    private final TokenVersionRegistry tokenVersionRegistry;
+    private final BalanceService balanceService;
 
     @Autowired
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, PasswordResetTokenRepository passwordResetTokenRepository) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, PasswordResetTokenRepository passwordResetTokenRepository,
+                       UserCache userCache, TokenVersionRegistry tokenVersionRegistry, BalanceService balanceService) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.passwordResetTokenRepository = passwordResetTokenRepository;
+        this.userCache = userCache;
+        this.tokenVersionRegistry = tokenVersionRegistry;
+        this.balanceService = balanceService;
     }
 
     public User findByEmail(String email) {
@@ -39,7 +59,10 @@ public class UserService  {
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
         user.setPassword(passwordEncoder.encode(newPassword));
+        revokeTokens(user);
         userRepository.save(user);
+        userCache.evict(user.getUsername());
+        tokenVersionRegistry.update(user.getUsername(), user.getId(), user.getTokenVersion());
     }
 
     public boolean validatePasswordResetToken(String token) {
@@ -47,16 +70,15 @@ public class UserService  {
                 .orElse(null);
 
         if (resetToken == null) {
-            System.out.println("Token not found in the database.");
+            logger.debug("Password reset token not found in the database");
             return false;
         }
 
         if (resetToken.getExpiryDate().isBefore(Instant.now())) {
-            System.out.println("Token has expired.");
+            logger.debug("Password reset token has expired");
             return false;
         }
 
-        System.out.println("Token is valid.");
         return true;
     }
 
@@ -86,12 +108,88 @@ public class UserService  {
         return userRepository.findAll();
     }
 
+    public List<UserSummaryDTO> getUserSummaries(long afterId, int limit) {
+        return userRepository.findSummariesAfter(afterId, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Id of the last user on a {@code limit}-sized page after {@code afterId}, or null if there is no next page.
+     */
+    public Long nextUsersWithNumbersCursor(String username, long afterId, int limit) {
+        List<Long> ids = userRepository.findIdsAfter(username, afterId, PageRequest.of(0, limit));
+        return ids.size() == limit ? ids.get(ids.size() - 1) : null;
+    }
+
+    /**
+     * Writes users and their numbers as a JSON array, reading {@value #EXPORT_CHUNK_SIZE} users at a time
+     * (an id page plus one join query) so memory use does not grow with the number of users.
+     */
+    public void writeUsersWithNumbers(String username, long afterId, Integer limit, OutputStream out) throws IOException {
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+            json.writeStartArray();
+            long cursor = afterId;
+            int remaining = limit != null ? limit : Integer.MAX_VALUE;
+            while (remaining > 0) {
+                List<Long> ids = userRepository.findIdsAfter(username, cursor,
+                        PageRequest.of(0, Math.min(EXPORT_CHUNK_SIZE, remaining)));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                writeUserChunk(json, userRepository.findUsersWithNumbers(ids));
+                json.flush();
+                cursor = ids.get(ids.size() - 1);
+                remaining -= ids.size();
+            }
+            json.writeEndArray();
+        }
+    }
+
+    // rows are ordered by user, so a user's numbers are contiguous
+    private void writeUserChunk(JsonGenerator json, List<UserNumberRow> rows) throws IOException {
+        Long currentUser = null;
+        for (UserNumberRow row : rows) {
+            if (!row.getUserId().equals(currentUser)) {
+                if (currentUser != null) {
+                    json.writeEndArray();
+                    json.writeEndObject();
+                }
+                currentUser = row.getUserId();
+                json.writeStartObject();
+                json.writeStringField("username", row.getUsername());
+                json.writeStringField("email", row.getEmail());
+                json.writeNumberField("balance", row.getBalance());
+                json.writeArrayFieldStart("phoneNumbers");
+            }
+            if (row.getPhoneNumber() != null) {
+                json.writeStartObject();
+                writeIfPresent(json, "phoneNumber", row.getPhoneNumber());
+                writeIfPresent(json, "serviceName", row.getServiceName());
+                if (row.getPrice() != null) {
+                    json.writeNumberField("price", row.getPrice());
+                }
+                writeIfPresent(json, "status", row.getStatus());
+                json.writeEndObject();
+            }
+        }
+        if (currentUser != null) {
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    private static void writeIfPresent(JsonGenerator json, String field, String value) throws IOException {
+        if (value != null) {
+            json.writeStringField(field, value);
+        }
+    }
+
     public void deleteUserByUsername(String username) {
-        System.out.println("Looking for user with username: " + username);
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found with username: " + username));
-        System.out.println("User found, deleting: " + user.getUsername());
+        logger.info("Deleting user: {}", user.getUsername());
         userRepository.delete(user);
+        userCache.evict(username);
+        tokenVersionRegistry.remove(username);
     }
 
     public void changePassword(String username, String oldPassword, String newPassword) {
@@ -106,22 +204,45 @@ public class UserService  {
         }
 
         user.setPassword(passwordEncoder.encode(newPassword));
+        revokeTokens(user);
         userRepository.save(user);
+        userCache.evict(username);
+        tokenVersionRegistry.update(username, user.getId(), user.getTokenVersion());
     }
 
-
-    public void updateUserBalance(String username, double newBalance) {
+    public void updateUserRole(String username, Role role) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found with username: " + username));
-        user.setBalance(newBalance);
+        user.setRole(role);
+        revokeTokens(user);
         userRepository.save(user);
+        userCache.evict(username);
+        tokenVersionRegistry.update(username, user.getId(), user.getTokenVersion());
+    }
+
+    private void revokeTokens(User user) {
+        user.setTokenVersion(user.getTokenVersion() + 1);
+        user.setTokenVersionChangedAt(Instant.now());
     }
 
+    public void updateUserBalance(String username, double newBalance) {
+        balanceService.setBalance(username, newBalance, "admin");
+    }
+
+    // the current row, for anything that shows balance or other fields that change outside the cache
     public User findByUsername(String username) {
         return userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found with username: " + username));
     }
 
+    public CachedUser findCachedUser(String username) {
+        CachedUser user = userCache.get(username, key -> userRepository.findByUsername(key).orElse(null));
+        if (user == null) {
+            throw new RuntimeException("User not found with username: " + username);
+        }
+        return user;
+    }
+
     public User registerUser(User user) {
         if (userRepository.findByUsername(user.getUsername()).isPresent()) {
             throw new RuntimeException("Username already exists");
@@ -134,8 +255,12 @@ public class UserService  {
         }
 
         user.setPassword(passwordEncoder.encode(user.getPassword()));
+        user.setTokenVersion(0);
+        user.setTokenVersionChangedAt(Instant.now());
 
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        tokenVersionRegistry.update(saved.getUsername(), saved.getId(), saved.getTokenVersion());
+        return saved;
     }
 
 }
\ No newline at end of file
@@ -1,38 +1,58 @@
 package com.example.smsservice.util;
 
 import com.example.smsservice.service.CustomUserDetailsService;
+import com.example.smsservice.service.TokenVersionRegistry;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.Enumeration;
+import java.util.Objects;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
+    private static final String SMS_STREAM_PATH = "/api/sms/stream";
+
     @Autowired
     private JwtUtil jwtUtil;
 
     @Autowired
     private CustomUserDetailsService customUserDetailsService;
 
+    @Autowired
+    private TokenVersionRegistry tokenVersionRegistry;
+
+    @Autowired
+    private JwtProperties jwtProperties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Override
     protected boolean shouldNotFilter(HttpServletRequest request) {
         String path = request.getRequestURI();
         boolean result = path.equals("/test-email/send") || path.equals("/favicon.ico") ||
                 path.equals("/api/auth/login") || path.equals("/api/auth/register") ||
                 path.equals("/api/auth/forgot-password") ||
-                path.equals("/api/payments/callback") || path.equals("/api/proxy/services") || path.equals("/api/auth/password-update");
-        System.out.println("Path: " + path + ", shouldNotFilter: " + result);
+                path.equals("/api/payments/callback") || path.equals("/api/proxy/services") || path.equals("/api/prices") ||
+                path.equals("/api/auth/password-update") ||
+                path.equals("/actuator/health") || path.equals("/actuator/prometheus");
         return result;
     }
 
@@ -40,36 +60,32 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
         String path = request.getRequestURI();
-        System.out.println("Processing request: " + path);
-
-        System.out.println("Request Headers:");
-        Enumeration<String> headerNames = request.getHeaderNames();
-        while (headerNames.hasMoreElements()) {
-            String headerName = headerNames.nextElement();
-            System.out.println(headerName + ": " + request.getHeader(headerName));
-        }
 
         if (shouldNotFilter(request)) {
-            System.out.println("Skipping filter for path: " + path);
             filterChain.doFilter(request, response);
             return;
         }
 
+        Timer.Sample sample = Timer.start(meterRegistry);
         try {
             String token = extractToken(request);
-            System.out.println("Extracted token: " + token);
             if (token != null) {
-                authenticateToken(token, request);
-                System.out.println("Token authenticated for path: " + path);
+                authenticateToken(token, null, request);
+            } else if (path.equals(SMS_STREAM_PATH) && request.getParameter("token") != null) {
+                // EventSource cannot send headers; only a stream token is accepted in the URL
+                authenticateToken(request.getParameter("token"), JwtUtil.SMS_STREAM_PURPOSE, request);
             } else {
                 throw new SecurityException("Token is missing");
             }
+            recordAuth(sample, "authenticated");
         } catch (SecurityException e) {
-            System.err.println("Security exception: " + e.getMessage());
+            recordAuth(sample, "rejected");
+            logger.debug("Rejected request to {}: {}", path, e.getMessage());
             handleError(response, HttpServletResponse.SC_UNAUTHORIZED, e.getMessage());
             return;
         } catch (Exception e) {
-            System.err.println("Unexpected error: " + e.getMessage());
+            recordAuth(sample, "error");
+            logger.error("Unexpected error while authenticating request to {}", path, e);
             handleError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Unexpected error");
             return;
         }
@@ -77,42 +93,68 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    private void recordAuth(Timer.Sample sample, String outcome) {
+        sample.stop(Timer.builder("auth.requests")
+                .description("Time spent authenticating a request token")
+                .tag("mode", jwtProperties.isStateless() ? "stateless" : "database")
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+    }
+
     private String extractToken(HttpServletRequest request) {
         String authorizationHeader = request.getHeader("Authorization");
         if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
-            System.out.println("Authorization header found.");
             return authorizationHeader.substring(7);
         }
-        System.out.println("No Authorization header found.");
         return null;
     }
 
-    private void authenticateToken(String token, HttpServletRequest request) {
-        System.out.println("Authenticating token: " + token);
-        String username = jwtUtil.extractUsername(token);
-        System.out.println("Extracted username: " + username);
+    private void authenticateToken(String token, String purpose, HttpServletRequest request) {
+        VerifiedToken verifiedToken;
+        try {
+            verifiedToken = jwtUtil.verify(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            throw new SecurityException("Invalid or expired token");
+        }
+        if (!Objects.equals(verifiedToken.purpose(), purpose)) {
+            throw new SecurityException("Token is not valid for this request");
+        }
+
+        String username = verifiedToken.subject();
 
         if (username == null) {
             throw new SecurityException("Token does not contain username");
         }
 
-        UserDetails userDetails = customUserDetailsService.loadUserByUsername(username);
-        System.out.println("Loaded UserDetails: " + userDetails);
+        UserDetails userDetails;
+        if (jwtProperties.isStateless()) {
+            userDetails = userDetailsFromClaims(verifiedToken);
+        } else {
+            userDetails = customUserDetailsService.loadUserByUsername(username);
+        }
 
-        if (jwtUtil.validateToken(token, userDetails.getUsername())) {
-            UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                    userDetails, null, userDetails.getAuthorities());
-            authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-            SecurityContextHolder.getContext().setAuthentication(authToken);
+        UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                userDetails, null, userDetails.getAuthorities());
+        authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+        SecurityContextHolder.getContext().setAuthentication(authToken);
+        request.setAttribute(RequestTraceFilter.USER_ATTRIBUTE, username);
+    }
 
-            System.out.println("User authenticated: " + username);
-        } else {
-            throw new SecurityException("Invalid token for user: " + username);
+    private UserDetails userDetailsFromClaims(VerifiedToken verifiedToken) {
+        if (!tokenVersionRegistry.isCurrent(verifiedToken.subject(), verifiedToken.userId(),
+                verifiedToken.tokenVersion())) {
+            throw new SecurityException("Token has been revoked");
+        }
+        if (verifiedToken.role() == null) {
+            throw new SecurityException("Token does not contain role");
         }
+        return User.withUsername(verifiedToken.subject())
+                .password("")
+                .roles(verifiedToken.role())
+                .build();
     }
 
     private void handleError(HttpServletResponse response, int status, String message) throws IOException {
-        System.out.println("Handling error. Status: " + status + ", Message: " + message);
         response.setContentType("application/json");
         response.setStatus(status);
         response.getWriter().write("{\"error\": \"" + message + "\"}");
@@ -9,5 +9,7 @@ import org.springframework.stereotype.Component;
 public class JwtProperties {
     private String secret;
     private long expiration;
+    // build the Authentication from verified claims only, without loading the user from the database
+    private boolean stateless;
 
 }
\ No newline at end of file
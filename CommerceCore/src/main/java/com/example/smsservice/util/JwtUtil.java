@@ -1,13 +1,26 @@
 package com.example.smsservice.util;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -16,99 +29,157 @@ import java.util.function.Function;
 @Component
 public class JwtUtil {
 
+    public static final String TOKEN_VERSION_CLAIM = "ver";
+    public static final String USER_ID_CLAIM = "uid";
+    public static final String PURPOSE_CLAIM = "purpose";
+    public static final String SMS_STREAM_PURPOSE = "sms-stream";
+
+    private static final Logger logger = LoggerFactory.getLogger(JwtUtil.class);
+
     @Value("${jwt.secret}")
     private String secretKey;
 
     @Value("${jwt.expiration}")
     private long jwtExpirationInMs;
 
-    private Key getSigningKey() {
-        return new SecretKeySpec(secretKey.getBytes(), SignatureAlgorithm.HS256.getJcaName());
+    @Value("${jwt.verified-cache.maximum-size:10000}")
+    private long verifiedCacheMaximumSize;
+
+    private Key signingKey;
+    private JwtParser jwtParser;
+
+    // digest of the raw token -> claims that already passed signature verification
+    private Cache<String, VerifiedToken> verifiedTokens;
+
+    @PostConstruct
+    void init() {
+        this.signingKey = new SecretKeySpec(secretKey.getBytes(), SignatureAlgorithm.HS256.getJcaName());
+        this.jwtParser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheMaximumSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+                        return timeToLive(value);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+                        return timeToLive(value);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
     }
 
-    public String generateToken(String username, String role) {
-        System.out.println("Generating token for username: " + username + ", role: " + role);
+    private static long timeToLive(VerifiedToken token) {
+        if (token.expiresAt() == null) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, Duration.between(Instant.now(), token.expiresAt()).toNanos());
+    }
+
+    public String generateToken(String username, String role, long userId, int tokenVersion) {
+        logger.debug("Generating token for username: {}, role: {}", username, role);
         Map<String, Object> claims = new HashMap<>();
         claims.put("role", role); // Добавляем роль в payload
-        String token = createToken(claims, username);
-        System.out.println("Generated token: " + token);
-        return token;
+        claims.put(USER_ID_CLAIM, userId);
+        claims.put(TOKEN_VERSION_CLAIM, tokenVersion);
+        return createToken(claims, username);
     }
 
     public String createToken(Map<String, Object> claims, String subject) {
+        return createToken(claims, subject, jwtExpirationInMs);
+    }
+
+    /**
+     * Short-lived token that only opens {@code /api/sms/stream}, for clients that cannot send an
+     * Authorization header (a browser EventSource passes it as a query parameter instead).
+     */
+    public String generateStreamToken(VerifiedToken source, long ttlMs) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("role", source.role());
+        claims.put(USER_ID_CLAIM, source.userId());
+        claims.put(TOKEN_VERSION_CLAIM, source.tokenVersion());
+        claims.put(PURPOSE_CLAIM, SMS_STREAM_PURPOSE);
+        return createToken(claims, source.subject(), ttlMs);
+    }
+
+    private String createToken(Map<String, Object> claims, String subject, long ttlMs) {
         return Jwts.builder()
                 .setClaims(claims)
                 .setSubject(subject)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + jwtExpirationInMs))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .setExpiration(new Date(System.currentTimeMillis() + ttlMs))
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
+    /**
+     * Parses and HMAC-verifies the token once. Repeat calls with the same token are answered
+     * from a bounded cache until the token expires.
+     *
+     * @throws io.jsonwebtoken.JwtException if the token is malformed, tampered with or expired
+     */
+    public VerifiedToken verify(String token) {
+        String digest = digest(token);
+        VerifiedToken cached = verifiedTokens.getIfPresent(digest);
+        if (cached != null && !cached.isExpired(Instant.now())) {
+            return cached;
+        }
+
+        Claims claims = jwtParser.parseClaimsJws(token).getBody();
+        Date expiration = claims.getExpiration();
+        Integer tokenVersion = claims.get(TOKEN_VERSION_CLAIM, Integer.class);
+        VerifiedToken verified = new VerifiedToken(
+                claims.getSubject(),
+                claims.get("role", String.class),
+                claims.get(USER_ID_CLAIM, Long.class),
+                tokenVersion != null ? tokenVersion : 0,
+                expiration != null ? expiration.toInstant() : null,
+                claims.get(PURPOSE_CLAIM, String.class)
+        );
+        verifiedTokens.put(digest, verified);
+        return verified;
+    }
+
     public Boolean validateToken(String token, String username) {
         try {
-            final String extractedUsername = extractUsername(token);
-            boolean isValid = (extractedUsername.equals(username) && !isTokenExpired(token));
-            System.out.println("Validating token for username: " + username + ", isValid: " + isValid);
-            return isValid;
+            return verify(token).subject().equals(username);
         } catch (Exception e) {
-            System.err.println("Error during token validation: " + e.getMessage());
+            logger.debug("Token validation failed: {}", e.getMessage());
             return false;
         }
     }
 
     public String extractUsername(String token) {
-        try {
-            String username = extractClaim(token, Claims::getSubject);
-            System.out.println("Extracted username from token: " + username);
-            return username;
-        } catch (Exception e) {
-            System.err.println("Error extracting username: " + e.getMessage());
-            throw e;
-        }
+        return verify(token).subject();
     }
 
     public String extractRole(String token) {
-        try {
-            String role = extractClaim(token, claims -> claims.get("role", String.class));
-            System.out.println("Extracted role from token: " + role);
-            return role;
-        } catch (Exception e) {
-            System.err.println("Error extracting role: " + e.getMessage());
-            throw e;
-        }
+        return verify(token).role();
     }
 
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
-        return claimsResolver.apply(claims);
+        return claimsResolver.apply(jwtParser.parseClaimsJws(token).getBody());
     }
 
-    private Claims extractAllClaims(String token) {
-        try {
-            return Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
-        } catch (Exception e) {
-            System.err.println("Error extracting claims from token: " + e.getMessage());
-            throw e;
-        }
+    public Date extractExpiration(String token) {
+        return Date.from(verify(token).expiresAt());
     }
 
-    private Boolean isTokenExpired(String token) {
+    private static String digest(String token) {
         try {
-            boolean isExpired = extractExpiration(token).before(new Date());
-            System.out.println("Is token expired: " + isExpired);
-            return isExpired;
-        } catch (Exception e) {
-            System.err.println("Error checking token expiration: " + e.getMessage());
-            throw e;
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
         }
     }
-
-    public Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,94 @@
+package com.example.smsservice.util;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Emits one structured record per sampled request (method, path, user, status, duration) to the
+ * {@code request-trace} logger, which logback writes through an async appender. Failed and slow
+ * requests are always recorded. Credentials never reach the log.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RequestTraceFilter extends OncePerRequestFilter {
+
+    /** Request attribute under which authentication filters publish the authenticated username. */
+    public static final String USER_ATTRIBUTE = RequestTraceFilter.class.getName() + ".user";
+
+    private static final Logger traceLogger = LoggerFactory.getLogger("request-trace");
+    private static final Set<String> SENSITIVE_HEADERS = Set.of("authorization", "cookie", "set-cookie", "x-api-key");
+
+    @Value("${trace.requests.sample-rate:0.01}")
+    private double sampleRate;
+
+    @Value("${trace.requests.slow-threshold-ms:1000}")
+    private long slowThresholdMs;
+
+    @Value("${trace.requests.include-headers:false}")
+    private boolean includeHeaders;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!traceLogger.isInfoEnabled()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        long startedAt = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            long durationMs = (System.nanoTime() - startedAt) / 1_000_000;
+            int status = response.getStatus();
+            if (status >= 500 || durationMs >= slowThresholdMs || sampled()) {
+                traceLogger.info(format(request, status, durationMs));
+            }
+        }
+    }
+
+    private boolean sampled() {
+        return sampleRate >= 1.0 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    private String format(HttpServletRequest request, int status, long durationMs) {
+        Object user = request.getAttribute(USER_ATTRIBUTE);
+        StringBuilder record = new StringBuilder(128)
+                .append("method=").append(request.getMethod())
+                .append(" path=").append(request.getRequestURI())
+                .append(" user=").append(user != null ? user : "-")
+                .append(" status=").append(status)
+                .append(" durationMs=").append(durationMs);
+        if (includeHeaders) {
+            StringJoiner headers = new StringJoiner(", ", "{", "}");
+            for (String name : Collections.list(request.getHeaderNames())) {
+                headers.add(name + "=" + redactHeader(name, request.getHeader(name)));
+            }
+            record.append(" headers=").append(headers);
+        }
+        return record.toString();
+    }
+
+    public static String redactHeader(String name, String value) {
+        if (value == null || !SENSITIVE_HEADERS.contains(name.toLowerCase())) {
+            return value;
+        }
+        int schemeEnd = value.indexOf(' ');
+        return schemeEnd > 0 ? value.substring(0, schemeEnd) + " [REDACTED]" : "[REDACTED]";
+    }
+}
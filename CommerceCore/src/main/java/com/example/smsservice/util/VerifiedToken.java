@@ -0,0 +1,16 @@
+package com.example.smsservice.util;
+
+import java.time.Instant;
+
+/**
+ * Claims of a JWT whose signature and expiry have already been checked by {@link JwtUtil#verify(String)}.
+ * {@code userId} is {@code null} for tokens issued before the claim existed; {@code purpose} is {@code null}
+ * for login tokens and set on narrowly scoped ones such as SMS stream tokens.
+ */
+public record VerifiedToken(String subject, String role, Long userId, int tokenVersion, Instant expiresAt,
+                            String purpose) {
+
+    public boolean isExpired(Instant now) {
+        return expiresAt != null && !expiresAt.isAfter(now);
+    }
+}
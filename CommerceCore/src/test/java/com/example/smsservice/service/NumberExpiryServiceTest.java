@@ -0,0 +1,174 @@
+package com.example.smsservice.service;
+
+import com.example.smsservice.model.PhoneNumber;
+import com.example.smsservice.model.Role;
+import com.example.smsservice.model.User;
+import com.example.smsservice.provider.ProviderClient;
+import com.example.smsservice.repository.PhoneNumberRepository;
+import com.example.smsservice.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Expiry and {@link PhoneNumberService#returnPhoneNumber} racing on the same number: the expiry lock must
+ * make the return wait, so a number is either expired or returned and refunded, never both.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:expiry;NON_KEYWORDS=VALUE;MODE=MySQL",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "jwt.secret=0123456789abcdef0123456789abcdef0123456789",
+        "api.mock.enabled=true",
+        "management.server.port=0",
+        "numbers.expiry.sweep-interval-ms=3600000",
+        "sms.ingestion.interval-ms=3600000"
+})
+class NumberExpiryServiceTest {
+
+    private static final Duration LOCK_HOLD = Duration.ofMillis(500);
+
+    @Autowired
+    private NumberExpiryService numberExpiryService;
+
+    @Autowired
+    private PhoneNumberService phoneNumberService;
+
+    @Autowired
+    private PhoneNumberRepository phoneNumberRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private ProviderClient providerClient;
+
+    @Test
+    void returnWaitsForTheExpiryLockAndThenFails() throws Exception {
+        User owner = createUser("expiry-lock");
+        PhoneNumber number = createExpiredNumber(owner, "+15550000001", "lock-1");
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        CountDownLatch locked = new CountDownLatch(1);
+
+        // the same steps as the expiry timer, holding the row lock for a while before marking it expired
+        CompletableFuture<Void> expiry = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(
+                status -> {
+                    Optional<PhoneNumberRepository.ExpiringNumberView> view = phoneNumberRepository.lockExpiringById(
+                            number.getId(), SmsIngestionService.POLLED_STATUSES, LocalDateTime.now());
+                    assertTrue(view.isPresent());
+                    locked.countDown();
+                    sleep(LOCK_HOLD);
+                    phoneNumberRepository.updateStatus(List.of(number.getId()), NumberExpiryService.EXPIRED_STATUS);
+                }));
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        long started = System.nanoTime();
+        assertThrows(IllegalStateException.class,
+                () -> phoneNumberService.returnPhoneNumber(owner.getUsername(), number.getPhoneNumber()));
+        long waitedMs = (System.nanoTime() - started) / 1_000_000;
+        expiry.get(10, TimeUnit.SECONDS);
+
+        assertTrue(waitedMs >= LOCK_HOLD.toMillis() - 50, "return did not wait for the lock, took " + waitedMs + " ms");
+        assertEquals(NumberExpiryService.EXPIRED_STATUS,
+                phoneNumberRepository.findById(number.getId()).orElseThrow().getStatus());
+        assertEquals(0.0, balanceOf(owner));
+        verify(providerClient, never()).reject("lock-1");
+    }
+
+    @Test
+    void sweepAndReturnOnTheSameNumberActOnlyOnce() throws Exception {
+        User owner = createUser("expiry-race");
+        int returned = 0;
+        for (int i = 0; i < 20; i++) {
+            String externalId = "race-" + i;
+            PhoneNumber number = createExpiredNumber(owner, "+1555100" + String.format("%04d", i), externalId);
+            CountDownLatch start = new CountDownLatch(1);
+
+            CompletableFuture<Void> sweep = CompletableFuture.runAsync(() -> {
+                await(start);
+                numberExpiryService.sweep();
+            });
+            CompletableFuture<Boolean> giveBack = CompletableFuture.supplyAsync(() -> {
+                await(start);
+                try {
+                    phoneNumberService.returnPhoneNumber(owner.getUsername(), number.getPhoneNumber());
+                    return true;
+                } catch (IllegalStateException e) {
+                    return false;
+                }
+            });
+            start.countDown();
+            sweep.get(10, TimeUnit.SECONDS);
+
+            if (giveBack.get(10, TimeUnit.SECONDS)) {
+                returned++;
+                assertTrue(phoneNumberRepository.findById(number.getId()).isEmpty());
+            } else {
+                assertEquals(NumberExpiryService.EXPIRED_STATUS,
+                        phoneNumberRepository.findById(number.getId()).orElseThrow().getStatus());
+            }
+            // released upstream exactly once, by whichever side won
+            verify(providerClient, times(1)).reject(externalId);
+        }
+        assertEquals(returned * 5.0, balanceOf(owner));
+    }
+
+    private User createUser(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("unused");
+        user.setEmail(username + "@example.com");
+        user.setRole(Role.USER);
+        return userRepository.save(user);
+    }
+
+    private PhoneNumber createExpiredNumber(User owner, String phoneNumber, String externalId) {
+        PhoneNumber number = new PhoneNumber(phoneNumber, "tg", 5.0, "active");
+        number.setExternalId(externalId);
+        number.setRentalType("short");
+        number.setUser(owner);
+        number.setExpires(LocalDateTime.now().minusMinutes(1));
+        return phoneNumberRepository.save(number);
+    }
+
+    private double balanceOf(User user) {
+        return userRepository.findById(user.getId()).orElseThrow().getBalance();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}